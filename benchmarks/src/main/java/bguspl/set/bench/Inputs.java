@@ -0,0 +1,120 @@
+package bguspl.set.bench;
+
+import bguspl.set.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Fixed-seed input generators for the benchmarks, so that every version of the code is measured on the same inputs.
+ */
+public final class Inputs {
+
+    /**
+     * The seed all generators start from.
+     */
+    public static final long SEED = 0x5E7C0DEL;
+
+    private Inputs() {
+    }
+
+    /**
+     * Creates a configuration for a deck of featureSize^featureCount cards (logging turned off).
+     *
+     * @param deck - the deck as "featureSize^featureCount" (e.g. "3^4").
+     * @return - the configuration object.
+     */
+    public static Config config(String deck) {
+        String[] sizes = deck.split("\\^");
+        Properties properties = new Properties();
+        properties.setProperty("LogLevel", Level.OFF.getName());
+        properties.setProperty("FeatureSize", sizes[0].trim());
+        properties.setProperty("FeatureCount", sizes[1].trim());
+        properties.setProperty("HumanPlayers", "0");
+        properties.setProperty("ComputerPlayers", "0");
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        return new Config(logger, properties);
+    }
+
+    /**
+     * Generates groups of config.featureSize cards, every other one of them a legal set (the rest are random and
+     * almost never legal), so that both outcomes of a set check are measured.
+     *
+     * @param config - the game configuration.
+     * @param count  - the number of groups.
+     * @return - count arrays of config.featureSize card ids.
+     */
+    public static int[][] cardGroups(Config config, int count) {
+        Random random = new Random(SEED);
+        int[][] groups = new int[count][];
+        for (int i = 0; i < count; ++i)
+            groups[i] = i % 2 == 0 ? legalSet(config, random) : randomCards(config, random, config.featureSize);
+        return groups;
+    }
+
+    /**
+     * Generates a legal set: in every feature the cards either all share a random value or take all values in a
+     * random order.
+     */
+    private static int[] legalSet(Config config, Random random) {
+        int[] cards = new int[config.featureSize];
+        List<Integer> values = new ArrayList<>();
+        for (int value = 0; value < config.featureSize; ++value)
+            values.add(value);
+
+        for (int feature = 0; feature < config.featureCount; ++feature) {
+            boolean sameSame = random.nextBoolean();
+            int same = random.nextInt(config.featureSize);
+            Collections.shuffle(values, random);
+            for (int i = 0; i < cards.length; ++i)
+                cards[i] = cards[i] * config.featureSize + (sameSame ? same : values.get(i));
+        }
+        return cards;
+    }
+
+    private static int[] randomCards(Config config, Random random, int count) {
+        int[] cards = new int[count];
+        for (int i = 0; i < count; ++i)
+            cards[i] = random.nextInt(config.deckSize);
+        return cards;
+    }
+
+    /**
+     * Generates random card ids (not necessarily different).
+     *
+     * @param config - the game configuration.
+     * @param count  - the number of cards.
+     * @return - count random card ids.
+     */
+    public static int[] cards(Config config, int count) {
+        return randomCards(config, new Random(SEED), count);
+    }
+
+    /**
+     * Generates shuffled decks of different cards, as the dealer's deck or the table would hold them.
+     *
+     * @param config - the game configuration.
+     * @param count  - the number of decks.
+     * @param size   - the number of cards in each deck (at most config.deckSize).
+     * @return - count lists of size different card ids.
+     */
+    public static List<List<Integer>> decks(Config config, int count, int size) {
+        Random random = new Random(SEED);
+        List<Integer> all = new ArrayList<>();
+        for (int card = 0; card < config.deckSize; ++card)
+            all.add(card);
+
+        List<List<Integer>> decks = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            Collections.shuffle(all, random);
+            decks.add(new ArrayList<>(all.subList(0, Math.min(size, all.size()))));
+        }
+        return decks;
+    }
+}
@@ -0,0 +1,99 @@
+package bguspl.set.bench;
+
+import bguspl.set.Config;
+import bguspl.set.Util;
+import bguspl.set.UtilImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the set logic in UtilImpl, for several deck sizes.
+ * Every benchmark goes over a fixed pool of generated inputs (see Inputs) so the JIT cannot fold the work away.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class UtilBenchmark {
+
+    /**
+     * The number of inputs in each pool (a power of 2).
+     */
+    private static final int POOL = 1024;
+
+    /**
+     * The number of cards on a standard table.
+     */
+    private static final int TABLE_CARDS = 12;
+
+    @Param({"3^4", "3^5", "4^4", "3^6"})
+    public String deck;
+
+    private Util util;
+    private int[][] groups;
+    private int[] cards;
+    private List<List<Integer>> tables;
+    private List<List<Integer>> decks;
+    private int next;
+
+    @Setup
+    public void setup() {
+        Config config = Inputs.config(deck);
+        util = new UtilImpl(config);
+        groups = Inputs.cardGroups(config, POOL);
+        cards = Inputs.cards(config, POOL);
+        tables = Inputs.decks(config, POOL, TABLE_CARDS);
+        // the cards left in the deck once the first table was dealt (what Dealer.shouldFinish used to scan)
+        decks = Inputs.decks(config, POOL, config.deckSize - TABLE_CARDS);
+        next = 0;
+    }
+
+    private int next() {
+        return next++ & (POOL - 1);
+    }
+
+    @Benchmark
+    public boolean testSet() {
+        return util.testSet(groups[next()]);
+    }
+
+    @Benchmark
+    public int completeSet() {
+        int[] group = groups[next()];
+        return util.completeSet(group[0], group[1]);
+    }
+
+    @Benchmark
+    public int[] cardToFeatures() {
+        return util.cardToFeatures(cards[next()]);
+    }
+
+    @Benchmark
+    public int[][] cardsToFeatures() {
+        return util.cardsToFeatures(groups[next()]);
+    }
+
+    @Benchmark
+    public List<int[]> findSetsOnTable() {
+        return util.findSets(tables.get(next()), Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public List<int[]> findFirstSetInDeck() {
+        return util.findSets(decks.get(next()), 1);
+    }
+}
@@ -0,0 +1,136 @@
+package bguspl.set;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.SimpleFormatter;
+
+/**
+ * A log handler that writes the log records to a file on a thread of its own.
+ * The logging threads only put the records in a bounded queue (records that do not fit are dropped and counted), and
+ * the writer thread formats them and writes them to the file in batches, so the game threads never wait for the
+ * formatting or the file.
+ */
+public class AsyncLogHandler extends Handler {
+
+    /**
+     * The maximum number of records written between flushes of the file.
+     */
+    private static final int BATCH = 256;
+
+    private final BlockingQueue<LogRecord> records;
+    private final Writer writer;
+    private final Thread writerThread;
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile long written;
+    private volatile boolean closed;
+
+    /**
+     * @param filename - the log file (overwritten).
+     * @param capacity - the maximum number of records waiting to be written.
+     */
+    public AsyncLogHandler(String filename, int capacity) throws IOException {
+        records = new ArrayBlockingQueue<>(capacity);
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filename), StandardCharsets.UTF_8));
+        setFormatter(new SimpleFormatter());
+        writerThread = new Thread(this::writeLoop, "log-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (closed || !isLoggable(record)) return;
+        if (records.offer(record)) published.incrementAndGet();
+        else dropped.incrementAndGet();
+    }
+
+    private void writeLoop() {
+        List<LogRecord> batch = new ArrayList<>(BATCH);
+        while (!closed || !records.isEmpty()) {
+            try {
+                batch.add(records.take());
+            } catch (InterruptedException ignored) {
+                // closing, write what is left
+            }
+            records.drainTo(batch, BATCH - batch.size());
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    private void write(List<LogRecord> batch) {
+        for (LogRecord record : batch) {
+            try {
+                writer.write(getFormatter().format(record));
+            } catch (Exception e) {
+                reportError(null, e, ErrorManager.WRITE_FAILURE);
+            }
+        }
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            reportError(null, e, ErrorManager.FLUSH_FAILURE);
+        }
+        synchronized (this) {
+            written += batch.size();
+            notifyAll();
+        }
+    }
+
+    /**
+     * Waits until the records published so far are written to the file.
+     */
+    @Override
+    public void flush() {
+        long target = published.get();
+        synchronized (this) {
+            while (written < target && writerThread.isAlive()) {
+                try {
+                    wait(100);
+                } catch (InterruptedException ignored) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the records left and closes the file.
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        writerThread.interrupt();
+        try {
+            writerThread.join();
+        } catch (InterruptedException ignored) {}
+        try {
+            if (dropped.get() > 0) writer.write(dropped.get() + " log records were dropped" + System.lineSeparator());
+            writer.close();
+        } catch (IOException e) {
+            reportError(null, e, ErrorManager.CLOSE_FAILURE);
+        }
+    }
+
+    /**
+     * @return - the number of records dropped because too many records were waiting to be written.
+     */
+    public long dropped() {
+        return dropped.get();
+    }
+}
@@ -0,0 +1,102 @@
+package bguspl.set;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * The card images packed in a single image (the atlas), with a descriptor of the tiles in it.
+ * The atlas is a grid of equally sized tiles, row by row, and the descriptor lists the names of the tiles in order
+ * (the card names, e.g. 0120, and empty_card). Loading one image is much faster than loading an image per card.
+ */
+public class CardAtlas {
+
+    public static final String IMAGE = "cards/atlas.png";
+    public static final String DESCRIPTOR = "cards/atlas.properties";
+
+    private CardAtlas() {
+    }
+
+    /**
+     * Loads the atlas from the class path.
+     *
+     * @return - the tiles by name, or null if there is no atlas.
+     * @throws IOException - if the atlas cannot be read.
+     */
+    public static Map<String, BufferedImage> load() throws IOException {
+        ClassLoader loader = CardAtlas.class.getClassLoader();
+        Properties descriptor = new Properties();
+        try (InputStream is = loader.getResourceAsStream(DESCRIPTOR)) {
+            if (is == null) return null;
+            descriptor.load(is);
+        }
+        BufferedImage atlas;
+        try (InputStream is = loader.getResourceAsStream(IMAGE)) {
+            if (is == null) return null;
+            atlas = ImageIO.read(is);
+        }
+        if (atlas == null) throw new IOException("unsupported atlas image format");
+
+        int width = Integer.parseInt(descriptor.getProperty("TileWidth"));
+        int height = Integer.parseInt(descriptor.getProperty("TileHeight"));
+        int columns = Integer.parseInt(descriptor.getProperty("Columns"));
+        String[] names = descriptor.getProperty("Tiles", "").split(",");
+        Map<String, BufferedImage> tiles = new LinkedHashMap<>();
+        for (int i = 0; i < names.length; i++)
+            tiles.put(names[i].trim(), atlas.getSubimage(i % columns * width, i / columns * height, width, height));
+        return tiles;
+    }
+
+    /**
+     * Packs the png images in a directory (all of the same size) into an atlas in the same directory.
+     *
+     * @param args - the directory (default: src/main/resources/cards).
+     */
+    public static void main(String[] args) throws IOException {
+        File directory = new File(args.length > 0 ? args[0] : "src/main/resources/cards");
+        File atlasFile = new File(directory, new File(IMAGE).getName());
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".png") && !name.equals(atlasFile.getName()));
+        if (files == null || files.length == 0) throw new IOException("no images in " + directory);
+        Arrays.sort(files);
+
+        Map<String, BufferedImage> images = new LinkedHashMap<>();
+        for (File file : files)
+            images.put(file.getName().substring(0, file.getName().length() - ".png".length()), ImageIO.read(file));
+        BufferedImage first = images.values().iterator().next();
+        int width = first.getWidth();
+        int height = first.getHeight();
+        int columns = (int) Math.ceil(Math.sqrt(images.size()));
+        int rows = (images.size() + columns - 1) / columns;
+
+        BufferedImage atlas = new BufferedImage(columns * width, rows * height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = atlas.createGraphics();
+        int i = 0;
+        for (Map.Entry<String, BufferedImage> image : images.entrySet()) {
+            if (image.getValue().getWidth() != width || image.getValue().getHeight() != height)
+                throw new IOException(image.getKey() + ".png is not " + width + "x" + height);
+            g.drawImage(image.getValue(), i % columns * width, i / columns * height, null);
+            i++;
+        }
+        g.dispose();
+        ImageIO.write(atlas, "png", atlasFile);
+
+        String nl = System.lineSeparator();
+        String descriptor = "# card atlas: " + images.size() + " tiles of " + width + "x" + height + ", row by row" + nl
+                + "TileWidth=" + width + nl + "TileHeight=" + height + nl + "Columns=" + columns + nl
+                + "Tiles=" + String.join(",", images.keySet()) + nl;
+        try (OutputStream os = new FileOutputStream(new File(directory, new File(DESCRIPTOR).getName()))) {
+            os.write(descriptor.getBytes(StandardCharsets.ISO_8859_1));
+        }
+        System.out.println("packed " + images.size() + " images into " + atlasFile);
+    }
+}
@@ -0,0 +1,240 @@
+package bguspl.set;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.RoundRectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Logger;
+
+/**
+ * The card images of the Swing user interface, scaled to the cell size.
+ * The images are loaded on a background thread (from the card atlas if there is one, else from a png per card), so
+ * the game starts right away. Until a card's image is loaded, or if it has none (e.g. in decks with more features),
+ * the card is drawn from its features.
+ */
+class CardImages {
+
+    private static final String EMPTY_CARD = "empty_card";
+
+    // the colors of the 2nd feature (red, purple, green as in the card images, then more for larger decks)
+    private static final Color[] COLORS = {new Color(0xE0, 0x20, 0x30), new Color(0x60, 0x20, 0x90),
+            new Color(0x10, 0x90, 0x40), new Color(0x20, 0x60, 0xD0), new Color(0xF0, 0x80, 0x10),
+            new Color(0x80, 0x50, 0x20), new Color(0xD0, 0x40, 0xB0), new Color(0x20, 0xA0, 0xA0),
+            Color.DARK_GRAY};
+
+    private final Config config;
+    private final Logger logger;
+
+    /**
+     * The images loaded (scaled), set by the loader thread. The empty card is at index deckSize.
+     */
+    private final AtomicReferenceArray<Image> loaded;
+
+    /**
+     * The images drawn from the card features (event dispatch thread only).
+     */
+    private final Image[] drawn;
+
+    /**
+     * @param logger   - the logger.
+     * @param config   - the game configuration.
+     * @param onLoaded - called (on the loader thread) after the images are loaded.
+     */
+    CardImages(Logger logger, Config config, Runnable onLoaded) {
+        this.logger = logger;
+        this.config = config;
+        loaded = new AtomicReferenceArray<>(config.deckSize + 1);
+        drawn = new Image[config.deckSize + 1];
+
+        Thread loader = new Thread(() -> {
+            load();
+            onLoaded.run();
+        }, "card-loader");
+        loader.setDaemon(true);
+        loader.setPriority(Thread.MIN_PRIORITY);
+        loader.start();
+    }
+
+    /**
+     * @param card - the card id.
+     * @return - the image of the card, scaled to the cell size.
+     */
+    Image card(int card) {
+        Image image = loaded.get(card);
+        if (image != null) return image;
+        if (drawn[card] == null) drawn[card] = draw(card);
+        return drawn[card];
+    }
+
+    /**
+     * @return - the image of an empty slot, scaled to the cell size.
+     */
+    Image empty() {
+        return card(config.deckSize);
+    }
+
+    private String name(int card) {
+        return card == config.deckSize ? EMPTY_CARD : UserInterfaceSwing.intInBaseToPaddedString(card, config.featureCount, config.featureSize);
+    }
+
+    private void load() {
+        long start = System.currentTimeMillis();
+        Map<String, BufferedImage> atlas = null;
+        try {
+            atlas = CardAtlas.load();
+        } catch (IOException | RuntimeException e) {
+            logger.severe("cannot load the card atlas: " + e.getMessage());
+        }
+
+        int missing = 0;
+        for (int card = 0; card <= config.deckSize; card++) {
+            Image image = atlas != null ? atlas.get(name(card)) : loadImage("cards/" + name(card) + ".png");
+            if (image != null) loaded.set(card, scale(image));
+            else missing++;
+        }
+        logger.info("loaded card images in " + (System.currentTimeMillis() - start) + " ms"
+                + (atlas != null ? " from the atlas" : "") + (missing > 0 ? ", " + missing + " cards are drawn" : ""));
+    }
+
+    private Image loadImage(String filename) {
+        try (InputStream is = getClass().getClassLoader().getResourceAsStream(filename)) {
+            return is == null ? null : ImageIO.read(is);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return - a new transparent image of the cell size, in the screen format when there is a screen.
+     */
+    private BufferedImage newImage() {
+        if (GraphicsEnvironment.isHeadless())
+            return new BufferedImage(config.cellWidth, config.cellHeight, BufferedImage.TYPE_INT_ARGB);
+        return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration()
+                .createCompatibleImage(config.cellWidth, config.cellHeight, Transparency.TRANSLUCENT);
+    }
+
+    private Image scale(Image image) {
+        BufferedImage scaled = newImage();
+        Graphics2D g = scaled.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(image, 0, 0, config.cellWidth, config.cellHeight, null);
+        g.dispose();
+        return scaled;
+    }
+
+    /**
+     * Draws a card from its features: the 1st feature is the number of symbols, the 2nd their color, the 3rd their
+     * shape and the 4th their shading (as in the card images). Any more features are written in the corner.
+     */
+    private Image draw(int card) {
+        BufferedImage image = newImage();
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        int width = config.cellWidth;
+        int height = config.cellHeight;
+        int margin = Math.max(2, Math.min(width, height) / 20);
+
+        g.setColor(card == config.deckSize ? new Color(0xE8, 0xE8, 0xE8) : Color.WHITE);
+        g.fillRoundRect(margin, margin, width - 2 * margin, height - 2 * margin, 4 * margin, 4 * margin);
+        g.setColor(Color.LIGHT_GRAY);
+        g.drawRoundRect(margin, margin, width - 2 * margin, height - 2 * margin, 4 * margin, 4 * margin);
+        if (card == config.deckSize) {
+            g.dispose();
+            return image;
+        }
+
+        String name = name(card);
+        int[] features = new int[Math.max(4, name.length())];
+        for (int i = 0; i < name.length(); i++)
+            features[i] = Character.digit(name.charAt(i), config.featureSize);
+
+        int count = features[0] + 1;
+        Color color = COLORS[features[1] % COLORS.length];
+        double slot = (width - 2.0 * margin) / Math.max(3, config.featureSize);
+        double symbolWidth = slot * 0.7;
+        double symbolHeight = (height - 2.0 * margin) * 0.7;
+        double left = (width - count * slot) / 2 + (slot - symbolWidth) / 2;
+        double top = (height - symbolHeight) / 2;
+        g.setStroke(new BasicStroke(Math.max(1.5f, margin / 2f)));
+        for (int i = 0; i < count; i++) {
+            Shape symbol = symbol(features[2], left + i * slot, top, symbolWidth, symbolHeight);
+            shade(g, symbol, features[3], color);
+        }
+
+        if (name.length() > 4) {
+            g.setColor(Color.GRAY);
+            g.setFont(new Font("SansSerif", Font.PLAIN, Math.max(8, height / 10)));
+            g.drawString(name.substring(4), 2 * margin, height - 2 * margin);
+        }
+        g.dispose();
+        return image;
+    }
+
+    private static Shape symbol(int shape, double x, double y, double width, double height) {
+        switch (shape % 5) {
+            case 0: // squiggle
+                Path2D squiggle = new Path2D.Double();
+                squiggle.moveTo(x + width * 0.2, y);
+                squiggle.curveTo(x + width * 1.2, y, x, y + height * 0.5, x + width, y + height * 0.5);
+                squiggle.curveTo(x + width * 1.2, y + height, x + width * 0.8, y + height, x + width * 0.8, y + height);
+                squiggle.curveTo(x - width * 0.2, y + height, x + width, y + height * 0.5, x, y + height * 0.5);
+                squiggle.curveTo(x - width * 0.2, y, x + width * 0.2, y, x + width * 0.2, y);
+                squiggle.closePath();
+                return squiggle;
+            case 1: // diamond
+                Path2D diamond = new Path2D.Double();
+                diamond.moveTo(x + width / 2, y);
+                diamond.lineTo(x + width, y + height / 2);
+                diamond.lineTo(x + width / 2, y + height);
+                diamond.lineTo(x, y + height / 2);
+                diamond.closePath();
+                return diamond;
+            case 2: // oval
+                return new RoundRectangle2D.Double(x, y, width, height, width, width);
+            case 3:
+                return new Ellipse2D.Double(x, y + (height - width) / 2, width, width);
+            default:
+                Path2D triangle = new Path2D.Double();
+                triangle.moveTo(x + width / 2, y);
+                triangle.lineTo(x + width, y + height);
+                triangle.lineTo(x, y + height);
+                triangle.closePath();
+                return triangle;
+        }
+    }
+
+    private static void shade(Graphics2D g, Shape symbol, int shading, Color color) {
+        g.setColor(color);
+        switch (shading % 4) {
+            case 0: // full
+                g.fill(symbol);
+                break;
+            case 1: // partial
+                Shape clip = g.getClip();
+                Stroke stroke = g.getStroke();
+                g.clip(symbol);
+                g.setStroke(new BasicStroke(1));
+                Rectangle bounds = symbol.getBounds();
+                for (int y = bounds.y; y < bounds.y + bounds.height; y += 4)
+                    g.drawLine(bounds.x, y, bounds.x + bounds.width, y);
+                g.setStroke(stroke);
+                g.setClip(clip);
+                break;
+            case 3:
+                g.setColor(new Color(color.getRed(), color.getGreen(), color.getBlue(), 80));
+                g.fill(symbol);
+                g.setColor(color);
+                break;
+            default: // empty
+                break;
+        }
+        g.draw(symbol);
+    }
+}
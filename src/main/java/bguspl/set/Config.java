@@ -86,6 +86,52 @@ public class Config {
      */
     public final long endGamePauseMillies;
 
+    /**
+     * True iff the dealer and players should run on virtual threads (ExecutionMode=virtual, requires Java 21)
+     */
+    public final boolean virtualThreads;
+
+    /**
+     * The seed of the game's random choices (a new seed every run if RandomSeed is not set)
+     */
+    public final long randomSeed;
+
+    /**
+     * The local port of the http endpoint serving the game metrics (0 for no endpoint)
+     */
+    public final int metricsPort;
+
+    /**
+     * The directory to write the binary game journals to (empty for no journal)
+     */
+    public final String journalDirectory;
+
+    /**
+     * The size (in bytes) of each journal segment file
+     */
+    public final long journalSegmentBytes;
+
+    /**
+     * The number of journal segments to keep, older segments are deleted (0 to keep all)
+     */
+    public final int journalMaxSegments;
+
+    /**
+     * The number of games a game host runs at once, more games are refused
+     */
+    public final int hostMaxGames;
+
+    /**
+     * The number of worker threads a game host runs the dealers on (0 for a worker per game), games beyond the workers
+     * wait for a worker
+     */
+    public final int hostWorkers;
+
+    /**
+     * The port the network server (NetworkServer) listens on for remote players
+     */
+    public final int serverPort;
+
     /**
      * The names of the players to display on the screen
      * Note: if there are more players than names, the remaining players will be called "Player 3", "Player 4", etc.
@@ -211,6 +257,22 @@ public class Config {
         tableDelayMillis = (long) (Double.parseDouble(properties.getProperty("TableDelaySeconds", "0.1")) * 1000.0);
         endGamePauseMillies = (long) (Double.parseDouble(properties.getProperty("EndGamePauseSeconds", "5")) * 1000.0);
 
+        String executionMode = properties.getProperty("ExecutionMode", "platform").trim();
+        if (!executionMode.equalsIgnoreCase("platform") && !executionMode.equalsIgnoreCase("virtual"))
+            logger.severe("invalid execution mode: " + executionMode + ", using platform threads");
+        if (executionMode.equalsIgnoreCase("virtual") && !GameThreads.virtualThreadsSupported())
+            logger.severe("virtual threads are not supported by this Java version, using platform threads");
+        virtualThreads = executionMode.equalsIgnoreCase("virtual") && GameThreads.virtualThreadsSupported();
+        String seed = properties.getProperty("RandomSeed", "").trim();
+        randomSeed = seed.isEmpty() ? GameRandom.newSeed() : Long.parseLong(seed);
+        metricsPort = Integer.parseInt(properties.getProperty("MetricsPort", "0"));
+        journalDirectory = properties.getProperty("JournalDirectory", "").trim();
+        journalSegmentBytes = (long) (Double.parseDouble(properties.getProperty("JournalSegmentMegabytes", "16")) * 1024 * 1024);
+        journalMaxSegments = Integer.parseInt(properties.getProperty("JournalMaxSegments", "0"));
+        hostMaxGames = Integer.parseInt(properties.getProperty("HostMaxGames", "64"));
+        hostWorkers = Integer.parseInt(properties.getProperty("HostWorkers", "0"));
+        serverPort = Integer.parseInt(properties.getProperty("ServerPort", "7777"));
+
         // ui settings
         String[] names = properties.getProperty("PlayerNames", "Player 1, Player 2").split(",");
         playerNames = new String[players];
@@ -8,11 +8,25 @@ public class Env {
     public final Config config;
     public final UserInterface ui;
     public final Util util;
+    public final GameMetrics metrics;
+    public final GameTimer timer;
+    public final GameJournal journal;
+    public final GameRandom random;
 
     public Env(Logger logger, Config config, UserInterface ui, Util util) {
+        this(logger, config, ui, util, new GameMetrics(config.players), GameTimer.shared(), new GameJournalNull(),
+                new GameRandom(config.randomSeed));
+    }
+
+    public Env(Logger logger, Config config, UserInterface ui, Util util, GameMetrics metrics, GameTimer timer,
+               GameJournal journal, GameRandom random) {
         this.logger = logger;
         this.config = config;
         this.ui = ui;
         this.util = util;
+        this.metrics = metrics;
+        this.timer = timer;
+        this.journal = journal;
+        this.random = random;
     }
 }
@@ -0,0 +1,97 @@
+package bguspl.set;
+
+import bguspl.set.ex.Dealer;
+import bguspl.set.ex.Player;
+import bguspl.set.ex.Table;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * A single game: its table, its dealer and its players, all made from the game's own environment.
+ * The game is played by running it (the calling thread becomes the dealer thread), and can be stopped from any thread.
+ */
+public class Game implements Runnable {
+
+    private final Env env;
+    private final Dealer dealer;
+    private final Player[] players;
+
+    /**
+     * True iff the game was stopped before it ended.
+     */
+    private volatile boolean terminated;
+
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    /**
+     * @param env     - the game environment.
+     * @param players - the array to create the players in (the user interface may already hold it).
+     */
+    public Game(Env env, Player[] players) {
+        this.env = env;
+        this.players = players;
+        Table table = new Table(env);
+        dealer = new Dealer(env, table, players);
+        for (int i = 0; i < players.length; i++)
+            players[i] = new Player(env, dealer, table, i, i < env.config.humanPlayers);
+    }
+
+    public Env env() {
+        return env;
+    }
+
+    /**
+     * Plays the game to its end (or until it is stopped).
+     */
+    @Override
+    public void run() {
+        try {
+            dealer.run();
+        } catch (RuntimeException | Error e) {
+            dealer.terminate(); // do not leave the player threads behind
+            throw e;
+        } finally {
+            finished.countDown();
+        }
+    }
+
+    /**
+     * Stops the game. The players are stopped before this returns, the dealer shortly after.
+     */
+    public void terminate() {
+        terminated = true;
+        dealer.terminate();
+    }
+
+    /**
+     * @return - true iff the game was stopped before it ended.
+     */
+    public boolean isTerminated() {
+        return terminated;
+    }
+
+    /**
+     * @return - true iff the game has ended (or was stopped, or failed).
+     */
+    public boolean isFinished() {
+        return finished.getCount() == 0;
+    }
+
+    /**
+     * Waits until the game has ended.
+     */
+    public void awaitFinished() throws InterruptedException {
+        finished.await();
+    }
+
+    /**
+     * Passes a key press of a player (e.g. from a remote user interface) to the player.
+     *
+     * @param player - the player id.
+     * @param slot   - the slot the player pressed.
+     */
+    public void keyPressed(int player, int slot) {
+        if (player >= 0 && player < players.length && slot >= 0 && slot < env.config.tableSize)
+            players[player].keyPressed(slot);
+    }
+}
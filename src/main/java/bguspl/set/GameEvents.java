@@ -0,0 +1,117 @@
+package bguspl.set;
+
+import bguspl.set.ex.Claim;
+
+/**
+ * Java Flight Recorder events of the game engine, so a recording shows the game next to the GC, lock and CPU
+ * activity. The events are emitted through the static methods of this class, which do nothing on a Java runtime
+ * without JFR, or when the game was built on JDK 8. The events themselves are in {@link GameEventsJfr}, which is
+ * loaded only when JFR is available, so this class does not depend on jdk.jfr.
+ * Durations are in nanoseconds (System.nanoTime differences), measured by the engine.
+ */
+public final class GameEvents {
+
+    /**
+     * Emits the events (implemented by {@link GameEventsJfr}).
+     */
+    interface Recorder {
+        void claimSubmitted(Claim claim, long sincePress);
+
+        void claimVerified(int player, String verdict, long check, long latency);
+
+        void cardPlaced(int card, int slot, long lockWait, long lockHold);
+
+        void cardRemoved(int card, int slot, long lockWait, long lockHold);
+
+        void reshuffle(int cards, int deckSize, long duration);
+
+        void playerFrozen(int player, String reason, long millis);
+    }
+
+    /**
+     * The recorder, null if there is no flight recorder.
+     */
+    private static final Recorder RECORDER;
+
+    static {
+        Recorder recorder;
+        try {
+            Class.forName("jdk.jfr.Event");
+            recorder = (Recorder) Class.forName("bguspl.set.GameEventsJfr").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            recorder = null; // running on a Java version without flight recorder, or built without the events
+        }
+        RECORDER = recorder;
+    }
+
+    private GameEvents() {
+    }
+
+    /**
+     * Called by a player after placing the last token of a set, when sending it to the dealer.
+     *
+     * @param claim      - the set (its cards are read only if the event is recorded).
+     * @param sincePress - the time since the key press that completed the set.
+     */
+    public static void claimSubmitted(Claim claim, long sincePress) {
+        if (RECORDER != null) RECORDER.claimSubmitted(claim, sincePress);
+    }
+
+    /**
+     * Called by the dealer after it checked a set.
+     *
+     * @param player  - the player id.
+     * @param verdict - "point", "penalty" or "stale" (a card of the set left the table).
+     * @param check   - the time the dealer took to check the set.
+     * @param latency - the time since the key press that completed the set.
+     */
+    public static void claimVerified(int player, String verdict, long check, long latency) {
+        if (RECORDER != null) RECORDER.claimVerified(player, verdict, check, latency);
+    }
+
+    /**
+     * Called by the table after the dealer placed a card.
+     *
+     * @param card     - the card id.
+     * @param slot     - the slot.
+     * @param lockWait - the time the dealer waited for the table's write lock.
+     * @param lockHold - the time the dealer held the lock.
+     */
+    public static void cardPlaced(int card, int slot, long lockWait, long lockHold) {
+        if (RECORDER != null) RECORDER.cardPlaced(card, slot, lockWait, lockHold);
+    }
+
+    /**
+     * Called by the table after the dealer removed a card.
+     *
+     * @param card     - the card id.
+     * @param slot     - the slot.
+     * @param lockWait - the time the dealer waited for the table's write lock.
+     * @param lockHold - the time the dealer held the lock.
+     */
+    public static void cardRemoved(int card, int slot, long lockWait, long lockHold) {
+        if (RECORDER != null) RECORDER.cardRemoved(card, slot, lockWait, lockHold);
+    }
+
+    /**
+     * Called by the dealer after it returned all the cards on the table to the deck.
+     *
+     * @param cards    - the number of cards returned.
+     * @param deckSize - the number of cards in the deck after that.
+     * @param duration - the time it took.
+     */
+    public static void reshuffle(int cards, int deckSize, long duration) {
+        if (RECORDER != null) RECORDER.reshuffle(cards, deckSize, duration);
+    }
+
+    /**
+     * Called when a player gets frozen.
+     *
+     * @param player - the player id.
+     * @param reason - "point" or "penalty".
+     * @param millis - the freeze time, in milliseconds.
+     */
+    public static void playerFrozen(int player, String reason, long millis) {
+        if (RECORDER != null) RECORDER.playerFrozen(player, reason, millis);
+    }
+}
@@ -0,0 +1,194 @@
+package bguspl.set;
+
+import bguspl.set.ex.Claim;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The Java Flight Recorder events of {@link GameEvents}. This class is loaded only when the runtime has JFR, and it is
+ * left out of builds on JDK 8 (see the jdk8 profile in the pom), where the game records no events.
+ * When no recording is running an event costs a check of shouldCommit and nothing is allocated (the events do not
+ * escape and are scalar replaced).
+ */
+final class GameEventsJfr implements GameEvents.Recorder {
+
+    @Override
+    public void claimSubmitted(Claim claim, long sincePress) {
+        ClaimSubmitted event = new ClaimSubmitted();
+        if (event.shouldCommit()) {
+            StringBuilder cards = new StringBuilder("[");
+            for (int i = 0; i < claim.size(); i++)
+                cards.append(i == 0 ? "" : ", ").append(claim.card(i));
+            event.player = claim.player;
+            event.cards = cards.append(']').toString();
+            event.tableVersion = claim.tableVersion;
+            event.sincePress = sincePress;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void claimVerified(int player, String verdict, long check, long latency) {
+        ClaimVerified event = new ClaimVerified();
+        if (event.shouldCommit()) {
+            event.player = player;
+            event.verdict = verdict;
+            event.check = check;
+            event.latency = latency;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void cardPlaced(int card, int slot, long lockWait, long lockHold) {
+        CardPlaced event = new CardPlaced();
+        if (event.shouldCommit()) {
+            event.card = card;
+            event.slot = slot;
+            event.lockWait = lockWait;
+            event.lockHold = lockHold;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void cardRemoved(int card, int slot, long lockWait, long lockHold) {
+        CardRemoved event = new CardRemoved();
+        if (event.shouldCommit()) {
+            event.card = card;
+            event.slot = slot;
+            event.lockWait = lockWait;
+            event.lockHold = lockHold;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void reshuffle(int cards, int deckSize, long duration) {
+        Reshuffle event = new Reshuffle();
+        if (event.shouldCommit()) {
+            event.cards = cards;
+            event.deckSize = deckSize;
+            event.time = duration;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void playerFrozen(int player, String reason, long millis) {
+        PlayerFrozen event = new PlayerFrozen();
+        if (event.shouldCommit()) {
+            event.player = player;
+            event.reason = reason;
+            event.freeze = millis * 1_000_000;
+            event.commit();
+        }
+    }
+
+    @Name("bguspl.set.ClaimSubmitted")
+    @Label("Claim Submitted")
+    @Description("A player sent a set to the dealer")
+    @Category("Set Game")
+    @StackTrace(false)
+    static final class ClaimSubmitted extends Event {
+        @Label("Player")
+        int player;
+        @Label("Cards")
+        String cards;
+        @Label("Table Version")
+        long tableVersion;
+        @Label("Since Key Press")
+        @Timespan(Timespan.NANOSECONDS)
+        long sincePress;
+    }
+
+    @Name("bguspl.set.ClaimVerified")
+    @Label("Claim Verified")
+    @Description("The dealer checked a set sent by a player")
+    @Category("Set Game")
+    @StackTrace(false)
+    static final class ClaimVerified extends Event {
+        @Label("Player")
+        int player;
+        @Label("Verdict")
+        String verdict;
+        @Label("Check Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long check;
+        @Label("Key Press To Verdict")
+        @Timespan(Timespan.NANOSECONDS)
+        long latency;
+    }
+
+    @Name("bguspl.set.CardPlaced")
+    @Label("Card Placed")
+    @Description("The dealer placed a card on the table")
+    @Category("Set Game")
+    @StackTrace(false)
+    static final class CardPlaced extends Event {
+        @Label("Card")
+        int card;
+        @Label("Slot")
+        int slot;
+        @Label("Table Lock Wait")
+        @Timespan(Timespan.NANOSECONDS)
+        long lockWait;
+        @Label("Table Lock Hold")
+        @Timespan(Timespan.NANOSECONDS)
+        long lockHold;
+    }
+
+    @Name("bguspl.set.CardRemoved")
+    @Label("Card Removed")
+    @Description("The dealer removed a card from the table")
+    @Category("Set Game")
+    @StackTrace(false)
+    static final class CardRemoved extends Event {
+        @Label("Card")
+        int card;
+        @Label("Slot")
+        int slot;
+        @Label("Table Lock Wait")
+        @Timespan(Timespan.NANOSECONDS)
+        long lockWait;
+        @Label("Table Lock Hold")
+        @Timespan(Timespan.NANOSECONDS)
+        long lockHold;
+    }
+
+    @Name("bguspl.set.Reshuffle")
+    @Label("Reshuffle")
+    @Description("The dealer returned all the cards on the table to the deck")
+    @Category("Set Game")
+    @StackTrace(false)
+    static final class Reshuffle extends Event {
+        @Label("Cards Returned")
+        int cards;
+        @Label("Deck Size")
+        int deckSize;
+        @Label("Reshuffle Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long time;
+    }
+
+    @Name("bguspl.set.PlayerFrozen")
+    @Label("Player Frozen")
+    @Description("A player got frozen after a point or a penalty")
+    @Category("Set Game")
+    @StackTrace(false)
+    static final class PlayerFrozen extends Event {
+        @Label("Player")
+        int player;
+        @Label("Reason")
+        String reason;
+        @Label("Freeze Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long freeze;
+    }
+}
@@ -0,0 +1,222 @@
+package bguspl.set;
+
+import bguspl.set.ex.Player;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hosts many independent games at once in one process (e.g. a server with many tables).
+ * <p>
+ * Each game gets an environment of its own: its own table, dealer and players, its own user interface, its own random
+ * seed (derived from RandomSeed and the game number) and its own journal (game-N in the JournalDirectory). The games
+ * share the configuration, the utilities, the game timer and the metrics.
+ * <p>
+ * The dealers run on a bounded pool of worker threads (HostWorkers): a game that is started when all the workers are
+ * busy waits for a worker. At most HostMaxGames games are started or waiting at once, more games are refused.
+ * A host requires ExecutionMode=virtual (Java 21): the workers and the player threads (a player thread and a computer
+ * player thread per player) are then virtual threads, so all the games run on the JVM's carrier threads (as many as
+ * the processors) and hundreds of mostly idle games cost little. With platform threads every game would start
+ * 1 + 2 * players OS threads of its own, so the number of threads would not be bounded by the workers.
+ * A game that fails is stopped and logged without affecting the other games.
+ * <p>
+ * Usage: GameHost [games] [configuration file]
+ * Starts the games with computer players only, without a user interface, and waits for them to end. The game timing
+ * (turn timeout, freezes, table delay) is as configured, and ExecutionMode is virtual unless the file says otherwise.
+ */
+public class GameHost implements AutoCloseable {
+
+    private final Logger logger;
+    private final Config config;
+    private final Util util;
+    private final GameMetrics metrics;
+    private final GameRandom random;
+
+    private final Semaphore admission;
+    private final ThreadPoolExecutor workers;
+    private final Set<Game> games = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger nextGame = new AtomicInteger();
+    private final LongAdder refused = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private volatile boolean closed;
+
+    /**
+     * @param logger  - the logger of all the games.
+     * @param config  - the configuration of all the games.
+     * @param util    - the utilities object.
+     * @param metrics - the metrics to add the games' counters to.
+     * @throws IllegalArgumentException - if the games would not run on virtual threads.
+     */
+    public GameHost(Logger logger, Config config, Util util, GameMetrics metrics) {
+        if (!config.virtualThreads)
+            throw new IllegalArgumentException("a game host requires ExecutionMode=virtual (Java 21), with platform "
+                    + "threads every game starts " + (1 + 2 * config.players) + " threads of its own");
+        this.logger = logger;
+        this.config = config;
+        this.util = util;
+        this.metrics = metrics;
+        this.random = new GameRandom(config.randomSeed);
+
+        int maxGames = Math.max(1, config.hostMaxGames);
+        int threads = config.hostWorkers > 0 ? Math.min(config.hostWorkers, maxGames) : maxGames;
+        admission = new Semaphore(maxGames);
+        AtomicInteger workerIds = new AtomicInteger();
+        workers = new ThreadPoolExecutor(threads, threads, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                task -> GameThreads.newThread(config, task, "host-worker-" + workerIds.incrementAndGet()));
+        workers.allowCoreThreadTimeOut(true); // an idle host keeps no threads
+    }
+
+    /**
+     * Starts a new game, unless the host is full.
+     *
+     * @param ui - the user interface of the game (disposed when the game ends).
+     * @return - the game, or null if the host is full or closed.
+     */
+    public Game tryStart(UserInterface ui) {
+        if (closed || !admission.tryAcquire()) {
+            refused.increment();
+            return null;
+        }
+        int id = nextGame.getAndIncrement();
+        GameJournal journal = MappedGameJournal.open(logger, config, "game-" + id);
+        Env env = new Env(logger, config, new UserInterfaceDecorator(logger, util, ui), util, metrics,
+                GameTimer.shared(), journal, random.game(id));
+        Game game = new Game(env, new Player[config.players]);
+        games.add(game);
+        try {
+            workers.execute(() -> play(game, id, journal));
+        } catch (RejectedExecutionException e) { // the host was closed meanwhile
+            games.remove(game);
+            journal.close();
+            admission.release();
+            refused.increment();
+            return null;
+        }
+        logger.info("game " + id + " started (" + games.size() + " games)");
+        return game;
+    }
+
+    /**
+     * Plays a game on a worker thread and releases its place when it ends.
+     */
+    private void play(Game game, int id, GameJournal journal) {
+        try {
+            game.run();
+        } catch (RuntimeException e) { // the game is stopped, the other games go on
+            failed.increment();
+            logger.severe("game " + id + " failed: " + e);
+        } finally {
+            games.remove(game);
+            journal.close();
+            game.env().ui.dispose();
+            admission.release();
+            logger.info("game " + id + " ended (" + games.size() + " games)");
+        }
+    }
+
+    /**
+     * @return - the number of games started or waiting for a worker.
+     */
+    public int games() {
+        return games.size();
+    }
+
+    /**
+     * @return - the number of games waiting for a worker.
+     */
+    public int waiting() {
+        return workers.getQueue().size();
+    }
+
+    /**
+     * @return - the number of games refused because the host was full.
+     */
+    public long refused() {
+        return refused.sum();
+    }
+
+    /**
+     * @return - the number of games that failed.
+     */
+    public long failed() {
+        return failed.sum();
+    }
+
+    /**
+     * Refuses new games, stops the games that are still running and waits for them to end.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Game game : new ArrayList<>(games))
+            game.terminate();
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(10, TimeUnit.SECONDS))
+                logger.severe("the games did not end in time");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+
+        String filename = args.length > 1 ? args[1] : null;
+        Properties properties = new Properties();
+        if (filename != null)
+            try (InputStream is = Files.newInputStream(Paths.get(filename))) {
+                properties.load(is);
+            }
+        properties.setProperty("LogLevel", Level.OFF.getName());
+        if (!properties.containsKey("ExecutionMode")) properties.setProperty("ExecutionMode", "virtual");
+        properties.setProperty("HumanPlayers", "0");
+        if (properties.getProperty("ComputerPlayers", "0").equals("0")) properties.setProperty("ComputerPlayers", "2");
+        properties.setProperty("Hints", "False");
+        properties.setProperty("EndGamePauseSeconds", "0");
+
+        Logger logger = Logger.getLogger("SetGameHost");
+        logger.setUseParentHandlers(false);
+        Config config = new Config(logger, properties);
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : config.hostMaxGames;
+        GameMetrics metrics = new GameMetrics(config.players);
+
+        System.out.println("hosting " + count + " games (at most " + config.hostMaxGames + " at once) with "
+                + config.players + " computer players, random seed " + config.randomSeed);
+
+        long start = System.nanoTime();
+        try (GameHost host = new GameHost(logger, config, new UtilImpl(config), metrics);
+             MetricsExporter exporter = new MetricsExporter(logger, metrics, "host", config.metricsPort)) {
+            if (exporter.port() > 0)
+                System.out.println("metrics at http://localhost:" + exporter.port() + MetricsExporter.PATH);
+            List<Game> started = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                Game game = host.tryStart(new UserInterfaceNull());
+                if (game != null) started.add(game);
+            }
+            System.out.printf("started %d games (%d waiting for a worker), refused %d%n",
+                    started.size(), host.waiting(), host.refused());
+            for (Game game : started)
+                game.awaitFinished();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("games: %d in %.2f s, %d failed; claims: %d; peak threads: %d%n", metrics.games(), seconds,
+                    host.failed(), metrics.claims(), ManagementFactory.getThreadMXBean().getPeakThreadCount());
+        }
+    }
+}
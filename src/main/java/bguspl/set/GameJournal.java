@@ -0,0 +1,92 @@
+package bguspl.set;
+
+/**
+ * A binary journal of a game: every change of the table (cards and tokens), the dealer's verdicts, the scores and the
+ * reshuffles, in the order they happened, so a game can be replayed.
+ * Each entry is a fixed-size record: the time (System.nanoTime), the record type, a player, a slot, a card and a value
+ * (see {@link MappedGameJournal} for the layout).
+ * The journal is written by the dealer and player threads, so implementations must be thread safe and cheap.
+ */
+public interface GameJournal extends AutoCloseable {
+
+    // record types (0 is an unwritten record)
+    int GAME_STARTED = 1;   // player: the number of players, value: the deck size
+    int CARD_PLACED = 2;    // slot, card
+    int CARD_REMOVED = 3;   // slot, card
+    int TOKEN_PLACED = 4;   // player, slot, card
+    int TOKEN_REMOVED = 5;  // player, slot, card
+    int CLAIM = 6;          // player, slot: the verdict, card: the number of cards, value: the table version
+    int CLAIM_CARD = 7;     // player, slot, card (follows the claim record, one per card of the set)
+    int SCORE = 8;          // player, value: the new score
+    int RESHUFFLE = 9;      // value: the number of cards returned to the deck
+    int GAME_ENDED = 10;
+
+    // the verdicts of claims
+    int VERDICT_STALE = 0;  // a card of the set left the table before the dealer checked it
+    int VERDICT_POINT = 1;
+    int VERDICT_PENALTY = 2;
+
+    /**
+     * Called by the dealer when the game starts.
+     *
+     * @param players  - the number of players.
+     * @param deckSize - the number of cards in the deck.
+     */
+    void gameStarted(int players, int deckSize);
+
+    /**
+     * Called by the table when a card is placed (holding the table's write lock).
+     */
+    void cardPlaced(int slot, int card);
+
+    /**
+     * Called by the table when a card is removed (holding the table's write lock). The tokens on the slot are removed
+     * with it, without records of their own.
+     */
+    void cardRemoved(int slot, int card);
+
+    /**
+     * Called by the table when a player places a token (holding the table's read lock and the player's lock).
+     */
+    void tokenPlaced(int player, int slot, int card);
+
+    /**
+     * Called by the table when a player removes a token (holding the table's read lock and the player's lock).
+     */
+    void tokenRemoved(int player, int slot, int card);
+
+    /**
+     * Called by the dealer after it checked a set sent by a player.
+     *
+     * @param player       - the player id.
+     * @param verdict      - one of the VERDICT constants.
+     * @param slots        - the slots of the set's cards.
+     * @param cards        - the cards of the set.
+     * @param tableVersion - the table version the set was taken on.
+     */
+    void claimVerified(int player, int verdict, int[] slots, int[] cards, long tableVersion);
+
+    /**
+     * Called when a player's score changes.
+     */
+    void score(int player, int score);
+
+    /**
+     * Called by the dealer before it returns the cards on the table to the deck (not when it clears the table at the
+     * end of the game).
+     *
+     * @param cards - the number of cards on the table.
+     */
+    void reshuffle(int cards);
+
+    /**
+     * Called by the dealer when the game is over.
+     */
+    void gameEnded();
+
+    /**
+     * Writes what is left and releases the journal. Records added later are ignored.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,47 @@
+package bguspl.set;
+
+/**
+ * A game journal that records nothing (when journaling is off).
+ */
+public class GameJournalNull implements GameJournal {
+
+    @Override
+    public void gameStarted(int players, int deckSize) {
+    }
+
+    @Override
+    public void cardPlaced(int slot, int card) {
+    }
+
+    @Override
+    public void cardRemoved(int slot, int card) {
+    }
+
+    @Override
+    public void tokenPlaced(int player, int slot, int card) {
+    }
+
+    @Override
+    public void tokenRemoved(int player, int slot, int card) {
+    }
+
+    @Override
+    public void claimVerified(int player, int verdict, int[] slots, int[] cards, long tableVersion) {
+    }
+
+    @Override
+    public void score(int player, int score) {
+    }
+
+    @Override
+    public void reshuffle(int cards) {
+    }
+
+    @Override
+    public void gameEnded() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
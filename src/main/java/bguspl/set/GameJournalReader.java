@@ -0,0 +1,150 @@
+package bguspl.set;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Properties;
+
+import static bguspl.set.MappedGameJournal.*;
+
+/**
+ * Reads a journal written by {@link MappedGameJournal}, record by record in the order they were written.
+ * The segments are mapped one at a time, read only. Records that were never written are skipped.
+ */
+public class GameJournalReader {
+
+    private final File[] segments;
+    private final Properties properties = new Properties();
+    private final long startMillis;
+    private final long firstSegment;
+
+    private int segment = -1;
+    private MappedByteBuffer buffer;
+    private int offset;
+
+    // the current record
+    private long nanos;
+    private int type;
+    private int player;
+    private int slot;
+    private int card;
+    private long value;
+
+    /**
+     * @param directory - the journal directory.
+     * @throws IOException - if there is no journal in the directory or it cannot be read.
+     */
+    public GameJournalReader(File directory) throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.matches(SEGMENT_PATTERN));
+        if (files == null || files.length == 0) throw new IOException("no journal in " + directory);
+        Arrays.sort(files); // the numbers are zero padded
+        segments = files;
+
+        MappedByteBuffer first = map(segments[0]);
+        byte[] text = new byte[first.getInt(HEADER_PROPERTIES_LENGTH)];
+        for (int i = 0; i < text.length; i++)
+            text[i] = first.get(HEADER_PROPERTIES + i);
+        properties.load(new StringReader(new String(text, StandardCharsets.ISO_8859_1)));
+        startMillis = first.getLong(HEADER_START_MILLIS);
+        firstSegment = first.getLong(HEADER_SEGMENT);
+    }
+
+    /**
+     * @return - true iff a directory holds a journal.
+     */
+    public static boolean isJournal(File directory) {
+        String[] names = directory.list((dir, name) -> name.matches(SEGMENT_PATTERN));
+        return names != null && names.length > 0;
+    }
+
+    private static MappedByteBuffer map(File file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.capacity() < HEADER_SIZE || buffer.getLong(HEADER_MAGIC) != MAGIC)
+            throw new IOException(file + " is not a game journal segment");
+        if (buffer.getInt(HEADER_VERSION) != VERSION || buffer.getInt(HEADER_RECORD_SIZE) != RECORD_SIZE)
+            throw new IOException(file + " has an unsupported journal version " + buffer.getInt(HEADER_VERSION));
+        return buffer;
+    }
+
+    /**
+     * Moves to the next record.
+     *
+     * @return - false if there are no more records.
+     * @throws IOException - if a segment cannot be read.
+     */
+    public boolean next() throws IOException {
+        while (true) {
+            if (buffer == null || offset + RECORD_SIZE > buffer.capacity()) {
+                if (segment + 1 >= segments.length) return false;
+                buffer = map(segments[++segment]);
+                offset = HEADER_SIZE;
+                continue;
+            }
+            int at = offset;
+            offset += RECORD_SIZE;
+            type = buffer.getInt(at + RECORD_TYPE);
+            if (type == 0) continue; // never written
+            nanos = buffer.getLong(at + RECORD_NANOS);
+            player = buffer.getInt(at + RECORD_PLAYER);
+            slot = buffer.getInt(at + RECORD_SLOT);
+            card = buffer.getInt(at + RECORD_CARD);
+            value = buffer.getLong(at + RECORD_VALUE);
+            return true;
+        }
+    }
+
+    /**
+     * @return - the game configuration saved with the journal.
+     */
+    public Properties properties() {
+        return properties;
+    }
+
+    /**
+     * @return - the time the journal was started (epoch milliseconds).
+     */
+    public long startMillis() {
+        return startMillis;
+    }
+
+    /**
+     * @return - the number of the first segment (not 0 if older segments were deleted).
+     */
+    public long firstSegment() {
+        return firstSegment;
+    }
+
+    public long nanos() {
+        return nanos;
+    }
+
+    public int type() {
+        return type;
+    }
+
+    public int player() {
+        return player;
+    }
+
+    public int slot() {
+        return slot;
+    }
+
+    public int card() {
+        return card;
+    }
+
+    public long value() {
+        return value;
+    }
+}
@@ -0,0 +1,234 @@
+package bguspl.set;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class collects counters about the game engine. It is thread safe, and may be shared by several games (e.g.
+ * by the simulation runner) to aggregate them.
+ * The counters are lock free, so the game threads can update them on every key press. See {@link MetricsExporter}
+ * for watching them over JMX and http.
+ */
+public class GameMetrics {
+
+    private final long startNanos = System.nanoTime();
+
+    private final LongAdder games = new LongAdder();
+    private final LongAdder claims = new LongAdder();
+    private final LongAdder reshuffles = new LongAdder();
+    private final LongAdder cardsPlaced = new LongAdder();
+    private final LongAdder cardsRemoved = new LongAdder();
+    private final LongAdder keyPresses = new LongAdder();
+    private final LongAdder droppedPresses = new LongAdder();
+    private final LongAdder[] points;     // by player id
+    private final LongAdder[] penalties;  // by player id
+
+    /**
+     * The time from a player sending a set to the dealer until the dealer's verdict, in nanoseconds.
+     */
+    private final LatencyHistogram claimLatency = new LatencyHistogram();
+
+    /**
+     * The time the dealer waits for the table's write lock, in nanoseconds.
+     */
+    private final LatencyHistogram tableWriteWait = new LatencyHistogram();
+
+    /**
+     * The time the dealer holds the table's write lock (the players cannot place tokens meanwhile), in nanoseconds.
+     */
+    private final LatencyHistogram tableWriteHold = new LatencyHistogram();
+
+    /**
+     * The time the players wait for the table's read lock to place or remove a token, in nanoseconds.
+     */
+    private final LatencyHistogram tableReadWait = new LatencyHistogram();
+
+    /**
+     * The time the dealer works each time it wakes up (checking sets and replacing cards), in nanoseconds.
+     */
+    private final LatencyHistogram dealerLoop = new LatencyHistogram();
+
+    /**
+     * The number of key presses already waiting when a player presses a key.
+     */
+    private final LatencyHistogram actionQueueDepth = new LatencyHistogram();
+
+    /**
+     * @param players - the number of players in each game (the per player counters are by player id).
+     */
+    public GameMetrics(int players) {
+        points = new LongAdder[players];
+        penalties = new LongAdder[players];
+        for (int player = 0; player < players; player++) {
+            points[player] = new LongAdder();
+            penalties[player] = new LongAdder();
+        }
+    }
+
+    /**
+     * Called by the dealer after it checked a set sent by a player.
+     *
+     * @param latencyNanos - the time since the player sent the set.
+     */
+    public void claimVerified(long latencyNanos) {
+        claims.increment();
+        claimLatency.record(latencyNanos);
+    }
+
+    /**
+     * Called by the dealer when it returns all the cards on the table to the deck to reshuffle.
+     */
+    public void reshuffle() {
+        reshuffles.increment();
+    }
+
+    /**
+     * Called by the dealer when the game is over.
+     */
+    public void gameFinished() {
+        games.increment();
+    }
+
+    /**
+     * Called by the table after the dealer placed a card.
+     *
+     * @param waitNanos - the time the dealer waited for the table's write lock.
+     * @param holdNanos - the time the dealer held the lock.
+     */
+    public void cardPlaced(long waitNanos, long holdNanos) {
+        cardsPlaced.increment();
+        tableWriteWait.record(waitNanos);
+        tableWriteHold.record(holdNanos);
+    }
+
+    /**
+     * Called by the table after the dealer removed a card.
+     *
+     * @param waitNanos - the time the dealer waited for the table's write lock.
+     * @param holdNanos - the time the dealer held the lock.
+     */
+    public void cardRemoved(long waitNanos, long holdNanos) {
+        cardsRemoved.increment();
+        tableWriteWait.record(waitNanos);
+        tableWriteHold.record(holdNanos);
+    }
+
+    /**
+     * Called by the table when a player got the table's read lock to place or remove a token.
+     *
+     * @param waitNanos - the time the player waited for the lock.
+     */
+    public void tokenLockAcquired(long waitNanos) {
+        tableReadWait.record(waitNanos);
+    }
+
+    /**
+     * Called by the dealer after each iteration of its loop.
+     *
+     * @param nanos - the time the iteration took, not counting the wait for the players' sets.
+     */
+    public void dealerLoop(long nanos) {
+        dealerLoop.record(nanos);
+    }
+
+    /**
+     * Called when a player presses a key.
+     *
+     * @param depth    - the number of presses of the player already waiting.
+     * @param accepted - false if the press was dropped because too many presses were waiting.
+     */
+    public void keyPressed(int depth, boolean accepted) {
+        keyPresses.increment();
+        actionQueueDepth.record(depth);
+        if (!accepted) droppedPresses.increment();
+    }
+
+    /**
+     * Called when a player is awarded a point.
+     *
+     * @param player - the player id.
+     */
+    public void point(int player) {
+        points[player].increment();
+    }
+
+    /**
+     * Called when a player is penalized.
+     *
+     * @param player - the player id.
+     */
+    public void penalty(int player) {
+        penalties[player].increment();
+    }
+
+    public long games() {
+        return games.sum();
+    }
+
+    public long claims() {
+        return claims.sum();
+    }
+
+    public long reshuffles() {
+        return reshuffles.sum();
+    }
+
+    public LatencyHistogram claimLatency() {
+        return claimLatency;
+    }
+
+    public LatencyHistogram dealerLoop() {
+        return dealerLoop;
+    }
+
+    public LatencyHistogram tableWriteHold() {
+        return tableWriteHold;
+    }
+
+    public long droppedPresses() {
+        return droppedPresses.sum();
+    }
+
+    /**
+     * Takes a snapshot of all the metrics: counters, rates (per second since the metrics were created) and
+     * percentiles of the histograms (in milliseconds).
+     *
+     * @return - the metrics by name, in a fixed order (the per player counters last, by player id).
+     */
+    public Map<String, Number> snapshot() {
+        double seconds = Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+        Map<String, Number> snapshot = new LinkedHashMap<>();
+        snapshot.put("uptime_seconds", seconds);
+        snapshot.put("games", games());
+        snapshot.put("claims", claims());
+        snapshot.put("claims_per_second", claims() / seconds);
+        snapshot.put("reshuffles", reshuffles());
+        snapshot.put("reshuffles_per_game", (double) reshuffles() / Math.max(1, games()));
+        snapshot.put("cards_placed", cardsPlaced.sum());
+        snapshot.put("cards_placed_per_second", cardsPlaced.sum() / seconds);
+        snapshot.put("cards_removed", cardsRemoved.sum());
+        snapshot.put("cards_removed_per_second", cardsRemoved.sum() / seconds);
+        snapshot.put("key_presses", keyPresses.sum());
+        snapshot.put("key_presses_dropped", droppedPresses.sum());
+        snapshot.put("action_queue_depth_mean", actionQueueDepth.mean());
+        snapshot.put("action_queue_depth_max", actionQueueDepth.max());
+        putMillis(snapshot, "claim_latency", claimLatency);
+        putMillis(snapshot, "table_write_lock_wait", tableWriteWait);
+        putMillis(snapshot, "table_write_lock_hold", tableWriteHold);
+        putMillis(snapshot, "table_read_lock_wait", tableReadWait);
+        putMillis(snapshot, "dealer_loop", dealerLoop);
+        for (int player = 0; player < points.length; player++)
+            snapshot.put("player_" + player + "_points", points[player].sum());
+        for (int player = 0; player < penalties.length; player++)
+            snapshot.put("player_" + player + "_penalties", penalties[player].sum());
+        return snapshot;
+    }
+
+    private static void putMillis(Map<String, Number> snapshot, String name, LatencyHistogram histogram) {
+        snapshot.put(name + "_count", histogram.count());
+        snapshot.put(name + "_p50_ms", histogram.percentile(0.5) / 1e6);
+        snapshot.put(name + "_p99_ms", histogram.percentile(0.99) / 1e6);
+        snapshot.put(name + "_max_ms", histogram.max() / 1e6);
+    }
+}
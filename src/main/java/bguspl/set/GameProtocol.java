@@ -0,0 +1,197 @@
+package bguspl.set;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The binary protocol between the network front end ({@link NetworkServer}) and remote players.
+ * <p>
+ * Every message is a frame: a 2 byte length (of the type and the payload), a 1 byte type and a fixed payload per type
+ * (the winners frame has a count). All numbers are big endian, players and slots are 1 byte, cards are 2 bytes,
+ * times and scores are 4 bytes. Times are sent as milliseconds relative to the moment the frame was made, so the
+ * clocks of the server and the clients do not have to agree.
+ * <p>
+ * A client joins a table, receives the table as it is (a JOINED frame followed by the cards, tokens, scores, timers
+ * and freezes on it) and then every change of the table, and sends the slots its player presses.
+ * The connection is closed by the server when the game ends (after a GAME_ENDED frame).
+ */
+public final class GameProtocol {
+
+    /**
+     * The largest frame (including the length), the winners frame of 255 players.
+     */
+    public static final int MAX_FRAME = 2 + 1 + 1 + 255;
+
+    /**
+     * Join any table with a free seat (the table of the JOIN frame).
+     */
+    public static final int ANY_TABLE = -1;
+
+    // client to server
+    public static final int JOIN = 1;                  // table (4), or ANY_TABLE
+    public static final int PRESS = 2;                 // slot
+
+    // server to client
+    public static final int JOINED = 64;               // table (4), the client's player, players, table size
+    public static final int REFUSED = 65;              // reason
+    public static final int CARD_PLACED = 66;          // slot, card (2)
+    public static final int CARD_REMOVED = 67;         // slot
+    public static final int TOKEN_PLACED = 68;         // player, slot
+    public static final int TOKEN_REMOVED = 69;        // player, slot
+    public static final int TOKENS_REMOVED = 70;       // slot
+    public static final int ALL_TOKENS_REMOVED = 71;   // no payload
+    public static final int COUNTDOWN = 72;            // millis (4), warn (1 or 0)
+    public static final int COUNTDOWN_DEADLINE = 73;   // millis left (4), warn millis (4)
+    public static final int ELAPSED = 74;              // millis (4)
+    public static final int ELAPSED_SINCE = 75;        // millis since the start (4)
+    public static final int FREEZE = 76;               // player, millis (4)
+    public static final int FREEZE_DEADLINE = 77;      // player, millis left (4)
+    public static final int SCORE = 78;                // player, score (4)
+    public static final int WINNERS = 79;              // count, players
+    public static final int GAME_ENDED = 80;           // no payload
+
+    // the reasons of REFUSED
+    public static final int REFUSED_FULL = 1;          // no free seat and no room for another table
+    public static final int REFUSED_NO_TABLE = 2;      // the table does not exist or has ended
+    public static final int REFUSED_JOINED = 3;        // the client already has a seat
+
+    private GameProtocol() {
+    }
+
+    /**
+     * Starts a frame: writes the length (to be filled by end) and the type.
+     *
+     * @return - the position of the frame in the buffer.
+     */
+    public static int begin(ByteBuffer buffer, int type) {
+        int start = buffer.position();
+        buffer.putShort((short) 0);
+        buffer.put((byte) type);
+        return start;
+    }
+
+    /**
+     * Ends a frame started at a position: writes its length.
+     */
+    public static void end(ByteBuffer buffer, int start) {
+        buffer.putShort(start, (short) (buffer.position() - start - 2));
+    }
+
+    /**
+     * @return - a frame without a payload, or (below) with one or two players or slots.
+     */
+    public static ByteBuffer frame(int type) {
+        ByteBuffer buffer = ByteBuffer.allocate(3);
+        end(buffer, begin(buffer, type));
+        buffer.flip();
+        return buffer;
+    }
+
+    public static ByteBuffer frame(int type, int a) {
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        int start = begin(buffer, type);
+        buffer.put((byte) a);
+        end(buffer, start);
+        buffer.flip();
+        return buffer;
+    }
+
+    public static ByteBuffer frame(int type, int a, int b) {
+        ByteBuffer buffer = ByteBuffer.allocate(5);
+        int start = begin(buffer, type);
+        buffer.put((byte) a).put((byte) b);
+        end(buffer, start);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * @return - a card placed frame.
+     */
+    public static ByteBuffer cardPlaced(int slot, int card) {
+        ByteBuffer buffer = ByteBuffer.allocate(6);
+        int start = begin(buffer, CARD_PLACED);
+        buffer.put((byte) slot).putShort((short) card);
+        end(buffer, start);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * @return - a frame with a player (or none, if negative) and a number (a time or a score).
+     */
+    public static ByteBuffer number(int type, int player, long value) {
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        int start = begin(buffer, type);
+        if (player >= 0) buffer.put((byte) player);
+        buffer.putInt(clamp(value));
+        end(buffer, start);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * @return - a countdown frame.
+     */
+    public static ByteBuffer countdown(long millis, boolean warn) {
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        int start = begin(buffer, COUNTDOWN);
+        buffer.putInt(clamp(millis)).put((byte) (warn ? 1 : 0));
+        end(buffer, start);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * @return - a countdown to a deadline frame.
+     */
+    public static ByteBuffer countdownDeadline(long millisLeft, long warnMillis) {
+        ByteBuffer buffer = ByteBuffer.allocate(11);
+        int start = begin(buffer, COUNTDOWN_DEADLINE);
+        buffer.putInt(clamp(millisLeft)).putInt(clamp(warnMillis));
+        end(buffer, start);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * @return - a joined frame.
+     */
+    public static ByteBuffer joined(int table, int player, int players, int tableSize) {
+        ByteBuffer buffer = ByteBuffer.allocate(10);
+        int start = begin(buffer, JOINED);
+        buffer.putInt(table).put((byte) player).put((byte) players).put((byte) tableSize);
+        end(buffer, start);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * @return - a winners frame.
+     */
+    public static ByteBuffer winners(int[] players) {
+        ByteBuffer buffer = ByteBuffer.allocate(4 + players.length);
+        int start = begin(buffer, WINNERS);
+        buffer.put((byte) players.length);
+        for (int player : players)
+            buffer.put((byte) player);
+        end(buffer, start);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * @return - a join frame (sent by clients).
+     */
+    public static ByteBuffer join(int table) {
+        ByteBuffer buffer = ByteBuffer.allocate(7);
+        int start = begin(buffer, JOIN);
+        buffer.putInt(table);
+        end(buffer, start);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static int clamp(long value) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, value));
+    }
+}
@@ -0,0 +1,62 @@
+package bguspl.set;
+
+import java.util.Random;
+
+/**
+ * The source of the random choices of a game (shuffling the deck, choosing slots, the computer players' key presses),
+ * made from a single seed so the choices of a game can be repeated.
+ * Each thread takes a stream of its own (a Random derived from the seed and the stream id), so the threads do not
+ * contend on a shared Random, and a thread's choices do not depend on how the threads interleave.
+ */
+public class GameRandom {
+
+    // stream ids
+    public static final long DEALER = 0;
+    public static final long TABLE = 1;
+    public static final long PLAYERS = 2; // player i uses stream PLAYERS + i
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private final long seed;
+
+    /**
+     * @param seed - the seed of the game.
+     */
+    public GameRandom(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @return - a seed for a game whose seed is not configured.
+     */
+    public static long newSeed() {
+        return mix(System.nanoTime() ^ System.currentTimeMillis() * GOLDEN_GAMMA);
+    }
+
+    // the SplitMix64 finalizer: neighbouring inputs give unrelated outputs
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    public long seed() {
+        return seed;
+    }
+
+    /**
+     * @param game - the number of a game among games played with the same seed (e.g. by the simulation).
+     * @return - the random source of that game.
+     */
+    public GameRandom game(long game) {
+        return new GameRandom(mix(seed + GOLDEN_GAMMA * (game + 1)));
+    }
+
+    /**
+     * @param id - the stream id (one of the constants above), for a single thread.
+     * @return - a new random stream, the same for the same seed and id.
+     */
+    public Random stream(long id) {
+        return new Random(mix(seed ^ mix(id + 1)));
+    }
+}
@@ -0,0 +1,63 @@
+package bguspl.set;
+
+import java.lang.reflect.Method;
+
+/**
+ * This class creates the game threads (dealer, players and computer players), as platform threads or as virtual
+ * threads according to the configuration.
+ * Virtual threads are created by reflection, so the game still builds for and runs on Java versions without them.
+ * A virtual thread is created once when the class is loaded, so a Java version where they exist but cannot be used
+ * (Java 19 and 20 without --enable-preview) falls back to platform threads too.
+ */
+public final class GameThreads {
+
+    private static final Method ofVirtual;
+    private static final Method builderName;
+    private static final Method builderUnstarted;
+
+    static {
+        Method of = null, name = null, unstarted = null;
+        try {
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            of = Thread.class.getMethod("ofVirtual");
+            name = builder.getMethod("name", String.class);
+            unstarted = builder.getMethod("unstarted", Runnable.class);
+            unstarted.invoke(name.invoke(of.invoke(null), "probe"), (Runnable) () -> {}); // not started
+        } catch (ReflectiveOperationException | RuntimeException ignored) {
+            of = null; // running on a Java version without (usable) virtual threads
+        }
+        ofVirtual = of;
+        builderName = name;
+        builderUnstarted = unstarted;
+    }
+
+    private GameThreads() {
+    }
+
+    /**
+     * @return - true iff this Java version supports virtual threads (and they are enabled).
+     */
+    public static boolean virtualThreadsSupported() {
+        return ofVirtual != null;
+    }
+
+    /**
+     * Creates a game thread (not started).
+     *
+     * @param config - the game configuration (decides the kind of thread).
+     * @param task   - the task the thread runs.
+     * @param name   - the name of the thread.
+     * @return - the thread.
+     */
+    public static Thread newThread(Config config, Runnable task, String name) {
+        if (config.virtualThreads && virtualThreadsSupported()) {
+            try {
+                Object builder = builderName.invoke(ofVirtual.invoke(null), name);
+                return (Thread) builderUnstarted.invoke(builder, task);
+            } catch (ReflectiveOperationException e) {
+                throw new UnsupportedOperationException("cannot create a virtual thread", e);
+            }
+        }
+        return new Thread(task, name);
+    }
+}
@@ -0,0 +1,55 @@
+package bguspl.set;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class runs timed events of the game (e.g. the end of a player's freeze or a change of the countdown display)
+ * on a single daemon thread, so that the game threads do not have to wake up just to check the time.
+ * An idle timer costs nothing, and one timer may serve any number of players and games.
+ */
+public class GameTimer {
+
+    private static GameTimer shared;
+
+    private final ScheduledThreadPoolExecutor executor;
+
+    /**
+     * @param name - the name of the timer thread.
+     */
+    public GameTimer(String name) {
+        executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * @return - the timer shared by all the games in this JVM (created on first use).
+     */
+    public static synchronized GameTimer shared() {
+        if (shared == null) shared = new GameTimer("game-timer");
+        return shared;
+    }
+
+    /**
+     * Runs a task on the timer thread after a delay. Tasks should be short, as they delay the tasks after them.
+     *
+     * @param task        - the task.
+     * @param delayMillis - the delay in milliseconds (negative delays are treated as 0).
+     * @return - the future of the task (may be used to cancel it).
+     */
+    public ScheduledFuture<?> schedule(Runnable task, long delayMillis) {
+        return executor.schedule(task, Math.max(0, delayMillis), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the timer thread. Tasks that did not run yet are discarded.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,88 @@
+package bguspl.set;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of non-negative values (e.g. latencies in nanoseconds).
+ * Values are counted in buckets: every power of 2 is split into 16 buckets, so percentiles are accurate to about 6%.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(Long.SIZE * SUB_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    private static int index(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (magnitude - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (magnitude - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long lowestValue(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int magnitude = index / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = index % SUB_BUCKETS;
+        return (1L << magnitude) | (sub << (magnitude - SUB_BITS));
+    }
+
+    /**
+     * Records a value.
+     *
+     * @param value - the value (negative values are recorded as 0).
+     */
+    public void record(long value) {
+        if (value < 0) value = 0;
+        counts.incrementAndGet(index(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * @return - the number of values recorded.
+     */
+    public long count() {
+        return count.sum();
+    }
+
+    /**
+     * @return - the mean of the values recorded (0 if none).
+     */
+    public double mean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * @return - the largest value recorded (0 if none).
+     */
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * Finds the value below which the given fraction of the recorded values fall.
+     *
+     * @param fraction - the fraction (e.g. 0.99 for the 99th percentile).
+     * @return - the lowest value of the bucket the percentile falls in (0 if nothing was recorded).
+     */
+    public long percentile(double fraction) {
+        long total = 0;
+        for (int i = 0; i < counts.length(); ++i)
+            total += counts.get(i);
+        long rank = (long) Math.ceil(fraction * total);
+        long seen = 0;
+        for (int i = 0; i < counts.length(); ++i) {
+            seen += counts.get(i);
+            if (seen > 0 && seen >= rank) return lowestValue(i);
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,278 @@
+package bguspl.set;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static bguspl.set.GameProtocol.*;
+
+/**
+ * A load generating client for the {@link NetworkServer}: many remote players, all served by a single thread with a
+ * selector (like the server).
+ * Each client joins a table, follows the cards on it and presses a random card at a steady rate. The time from a press
+ * to the token it placed or removed is measured (presses the game ignores, e.g. of a frozen player, are not answered).
+ * When a game ends the client joins another table.
+ * <p>
+ * Usage: LoadClient [host] [port] [clients] [seconds] [presses per second of each client]
+ */
+public class LoadClient {
+
+    private static final long TICK_MILLIS = 10;
+    private static final long RETRY_MILLIS = 1000;     // the wait before joining again after being refused
+    private static final long UNANSWERED_NANOS = 1000000000L;
+
+    private final InetSocketAddress address;
+    private final long pressPeriodNanos;
+    private final Selector selector;
+    private final List<Client> clients = new ArrayList<>();
+    private final Random random = new Random();
+
+    // statistics
+    private final LatencyHistogram pressLatency = new LatencyHistogram();
+    private long joined;
+    private long refused;
+    private long gamesEnded;
+    private long frames;
+    private long bytes;
+    private long presses;
+    private long errors;
+
+    /**
+     * A remote player.
+     */
+    private static final class Client {
+
+        SocketChannel channel;
+        SelectionKey key;
+        final ByteBuffer input = ByteBuffer.allocate(16 * 1024);
+        final ByteBuffer output = ByteBuffer.allocate(256);
+        int player = -1;
+        int[] cards = new int[0];  // the card in each slot, -1 for none
+        long[] pressed = new long[0];  // the time of the unanswered press of each slot, 0 for none
+        long nextPress;
+        long reconnectAt;
+    }
+
+    /**
+     * @param address         - the server address.
+     * @param pressesPerSecond - the presses of each client per second.
+     */
+    public LoadClient(InetSocketAddress address, double pressesPerSecond) throws IOException {
+        this.address = address;
+        this.pressPeriodNanos = (long) (1e9 / pressesPerSecond);
+        this.selector = Selector.open();
+    }
+
+    private void connect(Client client) throws IOException {
+        client.channel = SocketChannel.open();
+        client.channel.configureBlocking(false);
+        client.channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        client.input.clear();
+        client.output.clear();
+        client.player = -1;
+        client.reconnectAt = 0;
+        if (client.channel.connect(address)) {
+            client.key = client.channel.register(selector, SelectionKey.OP_READ, client);
+            send(client, join(ANY_TABLE));
+        } else {
+            client.key = client.channel.register(selector, SelectionKey.OP_CONNECT, client);
+        }
+    }
+
+    private void disconnect(Client client, long now) {
+        client.key.cancel();
+        try {
+            client.channel.close();
+        } catch (IOException ignored) {}
+        client.player = -1;
+        client.reconnectAt = now + RETRY_MILLIS * 1000000;
+    }
+
+    private void send(Client client, ByteBuffer frame) throws IOException {
+        if (frame.remaining() > client.output.remaining()) return; // the server does not read, drop the frame
+        client.output.put(frame);
+        client.output.flip();
+        client.channel.write(client.output);
+        client.output.compact();
+        client.key.interestOps(client.output.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE
+                : SelectionKey.OP_READ);
+    }
+
+    /**
+     * Runs the clients for a time and prints the statistics.
+     *
+     * @param count   - the number of clients.
+     * @param seconds - the time to run.
+     */
+    public void run(int count, double seconds) throws IOException {
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            Client client = new Client();
+            clients.add(client);
+            client.nextPress = start + (long) (random.nextDouble() * pressPeriodNanos); // spread the presses
+            try {
+                connect(client);
+            } catch (IOException e) {
+                errors++;
+                client.reconnectAt = start + RETRY_MILLIS * 1000000;
+            }
+        }
+
+        long end = start + (long) (seconds * 1e9);
+        long nextTick = System.nanoTime();
+        for (long now = nextTick; now < end; now = System.nanoTime()) {
+            selector.select(Math.max(1, (nextTick - now) / 1000000));
+            now = System.nanoTime();
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                Client client = (Client) key.attachment();
+                try {
+                    if (key.isConnectable()) {
+                        client.channel.finishConnect();
+                        key.interestOps(SelectionKey.OP_READ);
+                        send(client, join(ANY_TABLE));
+                    }
+                    if (key.isValid() && key.isReadable()) read(client, now);
+                    if (key.isValid() && key.isWritable()) send(client, ByteBuffer.allocate(0));
+                } catch (IOException e) {
+                    errors++;
+                    disconnect(client, now);
+                }
+            }
+            if (now - nextTick >= 0) {
+                nextTick = now + TICK_MILLIS * 1000000;
+                tick(now);
+            }
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        for (Client client : clients)
+            if (client.channel != null) client.channel.close();
+        selector.close();
+
+        System.out.printf("clients: %d, joins: %d, refused: %d, games ended: %d, errors: %d%n",
+                count, joined, refused, gamesEnded, errors);
+        System.out.printf("received: %d frames (%.0f frames/sec, %.2f MB/sec)%n",
+                frames, frames / elapsed, bytes / elapsed / 1e6);
+        System.out.printf("presses: %d (%.0f presses/sec), answered: %d, press to token: p50 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+                presses, presses / elapsed, pressLatency.count(), pressLatency.percentile(0.5) / 1e6,
+                pressLatency.percentile(0.99) / 1e6, pressLatency.max() / 1e6);
+    }
+
+    // presses for the clients whose time has come, and reconnects the clients that were disconnected
+    private void tick(long now) throws IOException {
+        for (Client client : clients) {
+            if (client.reconnectAt != 0) {
+                if (now - client.reconnectAt >= 0) {
+                    try {
+                        connect(client);
+                    } catch (IOException e) {
+                        errors++;
+                        client.reconnectAt = now + RETRY_MILLIS * 1000000;
+                    }
+                }
+                continue;
+            }
+            if (client.player < 0 || now - client.nextPress < 0) continue;
+            client.nextPress += pressPeriodNanos;
+            if (now - client.nextPress > 0) client.nextPress = now; // fell behind, do not press in bursts
+            int slot = random.nextInt(client.cards.length);
+            if (client.cards[slot] < 0) continue;
+            if (client.pressed[slot] != 0 && now - client.pressed[slot] < UNANSWERED_NANOS) continue;
+            client.pressed[slot] = now;
+            presses++;
+            try {
+                send(client, frame(PRESS, slot));
+            } catch (IOException e) {
+                errors++;
+                disconnect(client, now);
+            }
+        }
+    }
+
+    private void read(Client client, long now) throws IOException {
+        ByteBuffer in = client.input;
+        int read = client.channel.read(in);
+        if (read < 0) { // the game ended (or the server is gone), join another table
+            disconnect(client, now);
+            client.reconnectAt = now;
+            return;
+        }
+        bytes += read;
+        in.flip();
+        while (in.remaining() >= 2) {
+            int length = in.getShort(in.position()) & 0xFFFF;
+            if (in.remaining() < length + 2) break;
+            int next = in.position() + 2 + length;
+            in.position(in.position() + 2);
+            receive(client, in.get() & 0xFF, in, now);
+            in.position(next);
+            frames++;
+        }
+        in.compact();
+    }
+
+    private void receive(Client client, int type, ByteBuffer in, long now) {
+        switch (type) {
+            case JOINED:
+                joined++;
+                in.getInt(); // the table
+                client.player = in.get() & 0xFF;
+                in.get(); // the players
+                int tableSize = in.get() & 0xFF;
+                client.cards = new int[tableSize];
+                Arrays.fill(client.cards, -1);
+                client.pressed = new long[tableSize];
+                break;
+            case REFUSED:
+                refused++;
+                disconnect(client, now);
+                break;
+            case CARD_PLACED:
+                int slot = in.get() & 0xFF;
+                client.cards[slot] = in.getShort() & 0xFFFF;
+                break;
+            case CARD_REMOVED:
+                client.cards[in.get() & 0xFF] = -1;
+                break;
+            case TOKEN_PLACED:
+            case TOKEN_REMOVED:
+                int player = in.get() & 0xFF;
+                int tokenSlot = in.get() & 0xFF;
+                if (player == client.player && client.pressed[tokenSlot] != 0) {
+                    pressLatency.record(now - client.pressed[tokenSlot]);
+                    client.pressed[tokenSlot] = 0;
+                }
+                break;
+            case GAME_ENDED:
+                gamesEnded++;
+                break;
+            default:
+                break;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 7777;
+        int clients = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        double seconds = args.length > 3 ? Double.parseDouble(args[3]) : 30;
+        double pressesPerSecond = args.length > 4 ? Double.parseDouble(args[4]) : 2;
+
+        System.out.println("running " + clients + " clients against " + host + ":" + port + " for " + seconds
+                + " s, " + pressesPerSecond + " presses/sec each");
+        new LoadClient(new InetSocketAddress(host, port), pressesPerSecond).run(clients, seconds);
+    }
+}
@@ -1,8 +1,6 @@
 package bguspl.set;
 
-import bguspl.set.ex.Dealer;
 import bguspl.set.ex.Player;
-import bguspl.set.ex.Table;
 
 import java.io.File;
 import java.io.IOException;
@@ -10,6 +8,7 @@ import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.concurrent.CountDownLatch;
 import java.util.logging.*;
 
 /**
@@ -17,17 +16,28 @@ import java.util.logging.*;
  */
 public class Main {
 
-    private static Dealer dealer;
-    private static Thread mainThread;
+    /**
+     * The game being played (null until it is created).
+     */
+    private static volatile Game game;
+
+    /**
+     * Counted down when the main function is done (the game ended and everything was closed).
+     */
+    private static final CountDownLatch mainDone = new CountDownLatch(1);
 
-    private static boolean xButtonPressed = false;
     private static Logger logger;
 
+    /**
+     * The maximum number of log records waiting to be written to the log file.
+     */
+    private static final int LOG_CAPACITY = 1 << 16;
+
     public static void xButtonPressed() throws InterruptedException {
         if (logger != null) logger.severe("exit button pressed");
-        xButtonPressed = true;
-        if (dealer != null) dealer.terminate();
-        mainThread.join();
+        Game running = game;
+        if (running != null) running.terminate();
+        mainDone.await();
     }
 
     /**
@@ -37,12 +47,11 @@ public class Main {
      */
     public static void main(String[] args) {
 
-        mainThread = Thread.currentThread();
-
         // create the game environment objects
         logger = initLogger();
         ThreadLogger.logStart(logger, Thread.currentThread().getName());
         Config config = new Config(logger, "config.properties");
+        logger.info("random seed: " + config.randomSeed + " (set RandomSeed to repeat the game's random choices)");
         Util util = new UtilImpl(config);
 
         Player[] players = new Player[config.players];
@@ -57,29 +66,40 @@ public class Main {
         }
         ui = new UserInterfaceDecorator(logger, util, ui);
 
-        Env env = new Env(logger, config, ui, util);
+        GameMetrics metrics = new GameMetrics(config.players);
+        MetricsExporter exporter = new MetricsExporter(logger, metrics, "game", config.metricsPort);
+        GameJournal journal = MappedGameJournal.open(logger, config,
+                new SimpleDateFormat("M-d_HH-mm-ss").format(Calendar.getInstance().getTime()));
+        Env env = new Env(logger, config, ui, util, metrics, GameTimer.shared(), journal,
+                new GameRandom(config.randomSeed));
 
         // create the game entities
-        Table table = new Table(env);
-        dealer = new Dealer(env, table, players);
-        for (int i = 0; i < players.length; i++)
-            players[i] = new Player(env, dealer, table, i, i < env.config.humanPlayers);
+        Game game = new Game(env, players);
+        Main.game = game;
 
         // start the dealer thread
-        ThreadLogger dealerThread = new ThreadLogger(dealer, "dealer", logger);
-        dealerThread.startWithLog();
+        Thread dealerThread = GameThreads.newThread(config, game, "dealer");
+        ThreadLogger.logStart(logger, dealerThread.getName());
+        dealerThread.start();
 
         try {
             // shutdown stuff
-            dealerThread.joinWithLog();
-            if (!xButtonPressed && config.endGamePauseMillies > 0) Thread.sleep(config.endGamePauseMillies);
+            try {
+                dealerThread.join();
+            } finally {
+                ThreadLogger.logStop(logger, dealerThread.getName());
+            }
+            if (!game.isTerminated() && config.endGamePauseMillies > 0) Thread.sleep(config.endGamePauseMillies);
         } catch (InterruptedException ignored) {
         } finally {
             logger.severe("thanks for playing... it was fun!");
             System.out.println("Thanks for playing... it was fun!");
             ThreadLogger.logStop(logger, Thread.currentThread().getName());
-            if (!xButtonPressed) env.ui.dispose();
-            for (Handler h : logger.getHandlers()) h.flush();
+            if (!game.isTerminated()) env.ui.dispose();
+            exporter.close();
+            journal.close();
+            for (Handler h : logger.getHandlers()) h.close(); // writes the last records and the number dropped
+            mainDone.countDown(); // the x button exits once this is counted down, so the log is closed first
         }
     }
 
@@ -87,11 +107,11 @@ public class Main {
 
         //just to make our log file nicer :)
         SimpleDateFormat format = new SimpleDateFormat("M-d_HH-mm-ss");
-        FileHandler handler;
+        Handler handler;
         try {
             //noinspection ResultOfMethodCallIgnored
             new File("./logs/").mkdirs();
-            handler = new FileHandler("./logs/" + format.format(Calendar.getInstance().getTime()) + ".log");
+            handler = new AsyncLogHandler("./logs/" + format.format(Calendar.getInstance().getTime()) + ".log", LOG_CAPACITY);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -108,8 +128,9 @@ public class Main {
         Handler[] handlers = logger.getHandlers();
         if (handlers != null) Arrays.stream(handlers).forEach(h -> h.setFormatter(new SimpleFormatter() {
             // default format (with timestamp)  = "[%1$tF %1$tT] [%2$-7s] %3$s%n";
+            // not synchronized: the log file handler formats on its writer thread only
             @Override
-            public synchronized String format(LogRecord lr) {
+            public String format(LogRecord lr) {
                 return String.format(format, new Date(lr.getMillis()),
                         lr.getLevel().getLocalizedName(), lr.getMessage()
                 );
@@ -0,0 +1,322 @@
+package bguspl.set;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * A game journal written to memory-mapped files (segments) in a directory.
+ * Writing a record reserves its place with a single atomic increment and then writes it to the mapped memory, so the
+ * game threads never lock, copy or call the file system (except when a new segment is mapped, once per segment).
+ * When all the records reserved in a segment are written the segment is unmapped, and a segment is never mapped
+ * twice (a writer that reserved its record before a roll over still finds the segment of its record mapped).
+ * Only the last segments are kept if a maximum number of segments is set.
+ *
+ * Each segment (segment-000000.journal, segment-000001.journal, ...) starts with a header of HEADER_SIZE bytes:
+ * the magic number, the format version, the record size, the segment number, the number of records per segment, the
+ * start time (epoch milliseconds and System.nanoTime) and the game configuration (as properties text).
+ * Then come the records, RECORD_SIZE bytes each, little endian: the time (System.nanoTime, long), the type (int, see
+ * {@link GameJournal}), the player, the slot and the card (ints) and a value (long). Records that were reserved but
+ * not written (e.g. the rest of the last segment) are all zeros.
+ */
+public class MappedGameJournal implements GameJournal {
+
+    public static final long MAGIC = 0x314C4E524A544553L; // "SETJRNL1"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 4096;
+    public static final int RECORD_SIZE = 32;
+    public static final String SEGMENT_PATTERN = "segment-\\d+\\.journal";
+
+    // header fields
+    public static final int HEADER_MAGIC = 0;
+    public static final int HEADER_VERSION = 8;
+    public static final int HEADER_RECORD_SIZE = 12;
+    public static final int HEADER_SEGMENT = 16;
+    public static final int HEADER_RECORDS_PER_SEGMENT = 24;
+    public static final int HEADER_START_MILLIS = 32;
+    public static final int HEADER_START_NANOS = 40;
+    public static final int HEADER_PROPERTIES_LENGTH = 48;
+    public static final int HEADER_PROPERTIES = 52;
+
+    // record fields
+    public static final int RECORD_NANOS = 0;
+    public static final int RECORD_TYPE = 8;
+    public static final int RECORD_PLAYER = 12;
+    public static final int RECORD_SLOT = 16;
+    public static final int RECORD_CARD = 20;
+    public static final int RECORD_VALUE = 24;
+
+    private final Logger logger;
+    private final File directory;
+    private final long recordsPerSegment;
+    private final int maxSegments;
+    private final long startMillis = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private final byte[] properties;
+
+    /**
+     * The sequence number of the next record.
+     */
+    private final AtomicLong next = new AtomicLong();
+
+    /**
+     * The segments mapped (those with records not yet written), guarded by this.
+     */
+    private final Map<Long, Segment> segments = new HashMap<>();
+
+    /**
+     * The last segment mapped.
+     */
+    private volatile Segment current;
+
+    private volatile boolean closed;
+
+    private static final class Segment {
+        final long number;
+        final MappedByteBuffer buffer;
+        final AtomicLong written = new AtomicLong(); // the records written, the segment is done when all are
+
+        Segment(long number, MappedByteBuffer buffer) {
+            this.number = number;
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * @param logger       - the logger.
+     * @param config       - the game configuration (written to the segment headers).
+     * @param directory    - the directory of the segments (created if needed, an older journal in it is replaced).
+     * @param segmentBytes - the size of a segment file.
+     * @param maxSegments  - the number of segments to keep (older ones are deleted), 0 to keep all.
+     * @throws IOException - if the first segment cannot be created.
+     */
+    public MappedGameJournal(Logger logger, Config config, File directory, long segmentBytes, int maxSegments) throws IOException {
+        this.logger = logger;
+        this.directory = directory;
+        this.maxSegments = maxSegments;
+        long maxRecords = (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE;
+        recordsPerSegment = Math.min(maxRecords, Math.max(1, (segmentBytes - HEADER_SIZE) / RECORD_SIZE));
+        properties = properties(config).getBytes(StandardCharsets.ISO_8859_1);
+        if (HEADER_PROPERTIES + properties.length > HEADER_SIZE)
+            throw new IOException("the configuration does not fit in the journal header");
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("cannot create the journal directory " + directory);
+        File[] old = directory.listFiles((dir, name) -> name.matches(SEGMENT_PATTERN));
+        if (old != null)
+            for (File file : old)
+                if (!file.delete()) throw new IOException("cannot delete the old journal segment " + file);
+        current = map(0);
+        segments.put(0L, current);
+    }
+
+    /**
+     * Opens the journal of a game, in a directory of its own under the configured journal directory.
+     *
+     * @param logger - the logger.
+     * @param config - the game configuration.
+     * @param name   - the name of the game's directory.
+     * @return - the journal, or a journal that records nothing if journaling is off or the journal cannot be created.
+     */
+    public static GameJournal open(Logger logger, Config config, String name) {
+        if (config.journalDirectory.isEmpty()) return new GameJournalNull();
+        File directory = new File(config.journalDirectory, name);
+        try {
+            return new MappedGameJournal(logger, config, directory, config.journalSegmentBytes, config.journalMaxSegments);
+        } catch (IOException e) {
+            logger.severe("cannot create the game journal in " + directory + ": " + e.getMessage());
+            return new GameJournalNull();
+        }
+    }
+
+    /**
+     * @return - the configuration a replay needs (the cards, table and players) as properties text.
+     */
+    static String properties(Config config) {
+        Properties properties = new Properties();
+        properties.setProperty("FeatureSize", Integer.toString(config.featureSize));
+        properties.setProperty("FeatureCount", Integer.toString(config.featureCount));
+        properties.setProperty("HumanPlayers", Integer.toString(config.humanPlayers));
+        properties.setProperty("ComputerPlayers", Integer.toString(config.computerPlayers));
+        properties.setProperty("Rows", Integer.toString(config.rows));
+        properties.setProperty("Columns", Integer.toString(config.columns));
+        properties.setProperty("TurnTimeoutSeconds", Double.toString(config.turnTimeoutMillis / 1000.0));
+        properties.setProperty("PointFreezeSeconds", Double.toString(config.pointFreezeMillis / 1000.0));
+        properties.setProperty("PenaltyFreezeSeconds", Double.toString(config.penaltyFreezeMillis / 1000.0));
+        properties.setProperty("PlayerNames", String.join(",", config.playerNames));
+        StringWriter text = new StringWriter();
+        try {
+            properties.store(text, "game journal configuration");
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // not thrown by a StringWriter
+        }
+        return text.toString();
+    }
+
+    /**
+     * @param directory - the journal directory.
+     * @param number    - the segment number.
+     * @return - the segment file.
+     */
+    public static File segmentFile(File directory, long number) {
+        return new File(directory, String.format("segment-%06d.journal", number));
+    }
+
+    private Segment map(long number) throws IOException {
+        long size = HEADER_SIZE + recordsPerSegment * RECORD_SIZE;
+        MappedByteBuffer buffer;
+        try (RandomAccessFile file = new RandomAccessFile(segmentFile(directory, number), "rw")) {
+            file.setLength(0);
+            file.setLength(size); // sparse, the disk is used as records are written
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size); // stays valid after the close
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(HEADER_VERSION, VERSION);
+        buffer.putInt(HEADER_RECORD_SIZE, RECORD_SIZE);
+        buffer.putLong(HEADER_SEGMENT, number);
+        buffer.putLong(HEADER_RECORDS_PER_SEGMENT, recordsPerSegment);
+        buffer.putLong(HEADER_START_MILLIS, startMillis);
+        buffer.putLong(HEADER_START_NANOS, startNanos);
+        buffer.putInt(HEADER_PROPERTIES_LENGTH, properties.length);
+        for (int i = 0; i < properties.length; i++)
+            buffer.put(HEADER_PROPERTIES + i, properties[i]);
+        buffer.putLong(HEADER_MAGIC, MAGIC);
+        return new Segment(number, buffer);
+    }
+
+    /**
+     * Finds (or maps) a segment, rolling over to it if it is a new one.
+     * A segment is never mapped again (that would truncate it): the segments up to a new one are all mapped with it,
+     * since a writer may get ahead of the writers of the segments between.
+     *
+     * @return - the segment, or null if it cannot be mapped or was deleted (the record is lost).
+     */
+    private synchronized Segment segment(long number) {
+        Segment segment = segments.get(number);
+        if (segment != null || closed || number <= current.number) return segment;
+        while (current.number < number) {
+            long rolled = current.number + 1;
+            try {
+                segment = map(rolled);
+            } catch (IOException e) {
+                logger.severe("cannot map journal segment " + rolled + ": " + e.getMessage());
+                return null;
+            }
+            segments.put(rolled, segment);
+            current = segment;
+            if (maxSegments > 0 && rolled - maxSegments >= 0) {
+                Segment old = segments.remove(rolled - maxSegments); // its late records are lost with it
+                if (old != null) old.buffer.force();
+                File expired = segmentFile(directory, rolled - maxSegments);
+                if (expired.exists() && !expired.delete())
+                    logger.severe("cannot delete journal segment " + expired);
+            }
+        }
+        return segment;
+    }
+
+    /**
+     * Unmaps a segment all of whose records are written.
+     */
+    private synchronized void done(Segment segment) {
+        if (segments.get(segment.number) != segment) return;
+        segments.remove(segment.number);
+        segment.buffer.force();
+    }
+
+    private void put(long sequence, long nanos, int type, int player, int slot, int card, long value) {
+        long number = sequence / recordsPerSegment;
+        Segment segment = current;
+        if (segment.number != number) segment = segment(number);
+        if (segment == null) return;
+        int offset = HEADER_SIZE + (int) (sequence % recordsPerSegment) * RECORD_SIZE;
+        MappedByteBuffer buffer = segment.buffer;
+        buffer.putLong(offset + RECORD_NANOS, nanos);
+        buffer.putInt(offset + RECORD_PLAYER, player);
+        buffer.putInt(offset + RECORD_SLOT, slot);
+        buffer.putInt(offset + RECORD_CARD, card);
+        buffer.putLong(offset + RECORD_VALUE, value);
+        buffer.putInt(offset + RECORD_TYPE, type); // a record with a type is complete
+        if (segment.written.incrementAndGet() == recordsPerSegment) done(segment);
+    }
+
+    private void write(int type, int player, int slot, int card, long value) {
+        if (closed) return;
+        put(next.getAndIncrement(), System.nanoTime(), type, player, slot, card, value);
+    }
+
+    @Override
+    public void gameStarted(int players, int deckSize) {
+        write(GAME_STARTED, players, -1, -1, deckSize);
+    }
+
+    @Override
+    public void cardPlaced(int slot, int card) {
+        write(CARD_PLACED, -1, slot, card, 0);
+    }
+
+    @Override
+    public void cardRemoved(int slot, int card) {
+        write(CARD_REMOVED, -1, slot, card, 0);
+    }
+
+    @Override
+    public void tokenPlaced(int player, int slot, int card) {
+        write(TOKEN_PLACED, player, slot, card, 0);
+    }
+
+    @Override
+    public void tokenRemoved(int player, int slot, int card) {
+        write(TOKEN_REMOVED, player, slot, card, 0);
+    }
+
+    @Override
+    public void claimVerified(int player, int verdict, int[] slots, int[] cards, long tableVersion) {
+        if (closed) return;
+        long sequence = next.getAndAdd(cards.length + 1); // the claim and its cards are consecutive
+        long nanos = System.nanoTime();
+        put(sequence, nanos, CLAIM, player, verdict, cards.length, tableVersion);
+        for (int i = 0; i < cards.length; i++)
+            put(sequence + 1 + i, nanos, CLAIM_CARD, player, slots[i], cards[i], i);
+    }
+
+    @Override
+    public void score(int player, int score) {
+        write(SCORE, player, -1, -1, score);
+    }
+
+    @Override
+    public void reshuffle(int cards) {
+        write(RESHUFFLE, -1, -1, -1, cards);
+    }
+
+    @Override
+    public void gameEnded() {
+        write(GAME_ENDED, -1, -1, -1, 0);
+    }
+
+    /**
+     * @return - the number of records written so far.
+     */
+    public long records() {
+        return next.get();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        for (Segment segment : segments.values())
+            segment.buffer.force();
+        segments.clear();
+    }
+}
@@ -0,0 +1,179 @@
+package bguspl.set;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+
+/**
+ * Exports the game metrics as a JMX MBean (bguspl.set:type=GameMetrics) and, if a port is configured, as plain text
+ * (a "name value" line per metric) at http://localhost:port/metrics.
+ * The http server listens on the loopback address only, and serves the requests on a daemon thread of its own.
+ */
+public class MetricsExporter implements AutoCloseable {
+
+    public static final String PATH = "/metrics";
+
+    private final Logger logger;
+    private final GameMetrics metrics;
+    private ObjectName objectName;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * @param logger  - the logger.
+     * @param metrics - the metrics to export.
+     * @param name    - the name of the MBean (e.g. the program running the games).
+     * @param port    - the local http port (0 for no http endpoint).
+     */
+    public MetricsExporter(Logger logger, GameMetrics metrics, String name, int port) {
+        this.logger = logger;
+        this.metrics = metrics;
+        registerMBean(name);
+        if (port > 0) startHttp(port);
+    }
+
+    private void registerMBean(String name) {
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("bguspl.set:type=GameMetrics,name=" + ObjectName.quote(name));
+            mBeanServer.registerMBean(new MetricsMBean(), objectName);
+            this.objectName = objectName;
+        } catch (JMException | RuntimeException e) {
+            logger.severe("cannot register the metrics mbean: " + e);
+        }
+    }
+
+    private void startHttp(int port) {
+        try {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        } catch (IOException e) {
+            logger.severe("cannot serve the metrics on port " + port + ": " + e.getMessage());
+            return;
+        }
+        executor = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "metrics-http");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext(PATH, this::serve);
+        server.start();
+        logger.info("serving the metrics at http://localhost:" + port() + PATH);
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            StringBuilder text = new StringBuilder();
+            for (Map.Entry<String, Number> metric : metrics.snapshot().entrySet())
+                text.append(metric.getKey()).append(' ').append(metric.getValue()).append('\n');
+            byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * @return - the port of the http endpoint, or 0 if there is none.
+     */
+    public int port() {
+        return server == null ? 0 : server.getAddress().getPort();
+    }
+
+    /**
+     * Stops the http server and unregisters the MBean.
+     */
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdown();
+            server = null;
+        }
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException ignored) {
+            }
+            objectName = null;
+        }
+    }
+
+    /**
+     * A read-only MBean with an attribute per metric. The attributes are taken from the snapshot, so per player
+     * metrics appear as the players score.
+     */
+    private class MetricsMBean implements DynamicMBean {
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Number value = metrics.snapshot().get(attribute);
+            if (value == null) throw new AttributeNotFoundException(attribute);
+            return value;
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            Map<String, Number> snapshot = metrics.snapshot();
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes)
+                if (snapshot.containsKey(attribute)) list.add(new Attribute(attribute, snapshot.get(attribute)));
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException(attribute.getName() + " is read only");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (Map.Entry<String, Number> metric : metrics.snapshot().entrySet())
+                attributes.add(new MBeanAttributeInfo(metric.getKey(), metric.getValue().getClass().getName(),
+                        metric.getKey().replace('_', ' '), true, false, false));
+            return new MBeanInfo(GameMetrics.class.getName(), "the game engine metrics",
+                    attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+        }
+    }
+}
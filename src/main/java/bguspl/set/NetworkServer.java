@@ -0,0 +1,467 @@
+package bguspl.set;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static bguspl.set.GameProtocol.*;
+
+/**
+ * A TCP front end for remote players (see {@link GameProtocol}), serving all the connections from a single I/O thread
+ * with a selector.
+ * <p>
+ * A client that joins gets a seat (one of the human players) at a table with a free seat; a table is a game of a
+ * {@link GameHost}, started when no table has a free seat. The slots a client presses are passed to its player, and the
+ * changes of the table are sent to it by the table's {@link UserInterfaceNetwork}.
+ * The game threads never write to the sockets: they queue the frames of a connection and ask the I/O thread to write
+ * them (waking the selector once for any number of requests). A client that does not read its frames is disconnected.
+ * A table whose last client left is stopped, and the clients of a table are disconnected when its game ends.
+ * <p>
+ * Usage: NetworkServer [configuration file]
+ * The server listens on ServerPort; the seats are the HumanPlayers of the configuration (see {@link LoadClient}).
+ * ExecutionMode is virtual unless the file says otherwise (the game host requires it).
+ */
+public class NetworkServer implements Runnable, AutoCloseable {
+
+    private static final int BACKLOG = 1024;
+    private static final int OUTPUT_BUFFER = 8 * 1024;
+    private static final int MAX_QUEUED_BYTES = 256 * 1024;
+
+    private final Logger logger;
+    private final Config config;
+    private final GameHost host;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+
+    private final Queue<UserInterfaceNetwork> drainRequests = new ConcurrentLinkedQueue<>();
+    private final Queue<Connection> flushRequests = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    private volatile boolean closed;
+
+    // used by the I/O thread only
+    private final Map<Integer, RemoteTable> tables = new HashMap<>();
+    private final Set<RemoteTable> freeSeats = new LinkedHashSet<>(); // tables with a free seat, oldest first
+    private int nextTable;
+
+    private volatile int connections;
+    private volatile int tableCount;
+
+    /**
+     * @param logger - the logger.
+     * @param config - the game configuration (the seats are its human players).
+     * @param host   - the host of the tables' games.
+     * @param port   - the port to listen on (0 for any free port).
+     * @throws IOException - if the port cannot be opened.
+     */
+    public NetworkServer(Logger logger, Config config, GameHost host, int port) throws IOException {
+        this.logger = logger;
+        this.config = config;
+        this.host = host;
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        server.bind(new InetSocketAddress(port), BACKLOG);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * @return - the port the server listens on.
+     */
+    public int port() {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * @return - the number of connected clients.
+     */
+    public int connections() {
+        return connections;
+    }
+
+    /**
+     * @return - the number of tables with clients.
+     */
+    public int tables() {
+        return tableCount;
+    }
+
+    /**
+     * The I/O thread runs here until the server is closed.
+     */
+    @Override
+    public void run() {
+        logger.info("thread " + Thread.currentThread().getName() + " starting.");
+        try {
+            while (!closed) {
+                selector.select();
+                wakeupPending.set(false);
+                for (UserInterfaceNetwork ui; (ui = drainRequests.poll()) != null; )
+                    ui.drain();
+                for (Connection connection; (connection = flushRequests.poll()) != null; ) {
+                    connection.flushRequested.set(false);
+                    if (connection.key.isValid()) write(connection);
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    if (key.isReadable()) read(connection);
+                    if (key.isValid() && key.isWritable()) write(connection);
+                }
+            }
+        } catch (IOException e) {
+            logger.severe("network server failed: " + e);
+        } finally {
+            for (SelectionKey key : selector.keys())
+                if (key.attachment() instanceof Connection) close((Connection) key.attachment());
+            try {
+                server.close();
+                selector.close();
+            } catch (IOException ignored) {}
+            logger.info("thread " + Thread.currentThread().getName() + " terminated.");
+        }
+    }
+
+    /**
+     * Stops the I/O thread, which disconnects all the clients (the games go on).
+     */
+    @Override
+    public void close() {
+        closed = true;
+        selector.wakeup();
+    }
+
+    /**
+     * @return - true iff the server was closed.
+     */
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Asks the I/O thread to apply the queued changes of a table (called by any thread).
+     */
+    void requestDrain(UserInterfaceNetwork ui) {
+        drainRequests.add(ui);
+        if (wakeupPending.compareAndSet(false, true)) selector.wakeup();
+    }
+
+    /**
+     * Asks the I/O thread to write the queued frames of a connection (called by any thread).
+     */
+    void requestFlush(Connection connection) {
+        if (connection.flushRequested.compareAndSet(false, true)) {
+            flushRequests.add(connection);
+            if (wakeupPending.compareAndSet(false, true)) selector.wakeup();
+        }
+    }
+
+    private void accept() {
+        SocketChannel channel = null;
+        try {
+            while ((channel = server.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                Connection connection = new Connection(this, channel);
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                connections++;
+                channel = null;
+            }
+        } catch (IOException e) { // e.g. out of file descriptors, the other clients go on
+            logger.warning("cannot accept a client: " + e);
+            if (channel != null) try {
+                channel.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    private void read(Connection connection) {
+        ByteBuffer in = connection.input;
+        try {
+            if (connection.channel.read(in) < 0) {
+                close(connection);
+                return;
+            }
+        } catch (IOException e) {
+            close(connection);
+            return;
+        }
+        in.flip();
+        while (in.remaining() >= 2) {
+            int length = in.getShort(in.position()) & 0xFFFF;
+            if (length < 1 || length + 2 > in.capacity()) { // not a client of this protocol
+                close(connection);
+                return;
+            }
+            if (in.remaining() < length + 2) break;
+            int next = in.position() + 2 + length;
+            int type = in.get(in.position() + 2);
+            if (type == JOIN && length >= 5) join(connection, in.getInt(in.position() + 3));
+            else if (type == PRESS && length >= 2) press(connection, in.get(in.position() + 3) & 0xFF);
+            in.position(next); // other frames are ignored
+        }
+        in.compact();
+    }
+
+    private void write(Connection connection) {
+        if (connection.overflow) {
+            logger.warning("disconnecting a client that does not read its frames");
+            close(connection);
+            return;
+        }
+        try {
+            boolean written = connection.flush();
+            if (written && connection.closing) close(connection);
+            else connection.key.interestOps(written ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        } catch (IOException e) {
+            close(connection);
+        }
+    }
+
+    private void close(Connection connection) {
+        if (!connection.key.isValid()) return;
+        connection.key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException ignored) {}
+        connections--;
+
+        RemoteTable table = connection.table;
+        if (table == null) return;
+        table.ui.leave(connection);
+        table.seats[connection.seat] = null;
+        table.seated--;
+        if (table.seated == 0) { // nobody plays, stop the game
+            removeTable(table);
+            if (!table.ui.isDisposed())
+                GameThreads.newThread(config, table.game::terminate, "stop-table-" + table.id).start();
+        } else if (!table.ui.isDisposed()) {
+            freeSeats.add(table);
+        }
+    }
+
+    private void join(Connection connection, int tableId) {
+        if (connection.table != null) {
+            connection.send(frame(REFUSED, REFUSED_JOINED));
+            return;
+        }
+        RemoteTable table;
+        int seat;
+        boolean created = false;
+        while (true) {
+            if (tableId == ANY_TABLE) {
+                if (!freeSeats.isEmpty()) {
+                    table = freeSeats.iterator().next();
+                } else if (!created) {
+                    table = newTable();
+                    created = true;
+                } else { // the new table ended before the client joined it
+                    connection.send(frame(REFUSED, REFUSED_NO_TABLE));
+                    return;
+                }
+                if (table == null) {
+                    connection.send(frame(REFUSED, REFUSED_FULL));
+                    return;
+                }
+            } else {
+                table = tables.get(tableId);
+                if (table == null || table.ui.isDisposed()) {
+                    connection.send(frame(REFUSED, REFUSED_NO_TABLE));
+                    return;
+                }
+            }
+
+            seat = table.freeSeat();
+            if (seat < 0) {
+                connection.send(frame(REFUSED, REFUSED_FULL));
+                return;
+            }
+            if (table.ui.join(connection, seat)) break;
+            removeTable(table); // the game has ended (its players may not have left yet)
+            if (tableId != ANY_TABLE) {
+                connection.send(frame(REFUSED, REFUSED_NO_TABLE));
+                return;
+            }
+        }
+        table.seats[seat] = connection;
+        table.seated++;
+        connection.table = table;
+        connection.seat = seat;
+        if (table.freeSeat() < 0) freeSeats.remove(table);
+    }
+
+    private RemoteTable newTable() {
+        if (config.humanPlayers == 0) return null;
+        int id = nextTable++;
+        UserInterfaceNetwork ui = new UserInterfaceNetwork(this, id, config);
+        Game game = host.tryStart(ui);
+        if (game == null) return null;
+        RemoteTable table = new RemoteTable(id, game, ui, config.humanPlayers);
+        tables.put(id, table);
+        freeSeats.add(table);
+        tableCount = tables.size();
+        return table;
+    }
+
+    private void removeTable(RemoteTable table) {
+        tables.remove(table.id);
+        freeSeats.remove(table);
+        tableCount = tables.size();
+    }
+
+    private void press(Connection connection, int slot) {
+        if (connection.table != null) connection.table.game.keyPressed(connection.seat, slot);
+    }
+
+    /**
+     * A game played by remote players.
+     */
+    private static final class RemoteTable {
+
+        final int id;
+        final Game game;
+        final UserInterfaceNetwork ui;
+        final Connection[] seats;
+        int seated;
+
+        RemoteTable(int id, Game game, UserInterfaceNetwork ui, int seats) {
+            this.id = id;
+            this.game = game;
+            this.ui = ui;
+            this.seats = new Connection[seats];
+        }
+
+        int freeSeat() {
+            for (int seat = 0; seat < seats.length; seat++)
+                if (seats[seat] == null) return seat;
+            return -1;
+        }
+    }
+
+    /**
+     * A client connection. Frames are queued by any thread and written by the I/O thread.
+     */
+    static final class Connection {
+
+        private final NetworkServer server;
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private final ByteBuffer input = ByteBuffer.allocate(MAX_FRAME);
+        private final ByteBuffer output = ByteBuffer.allocateDirect(OUTPUT_BUFFER);
+        private final Queue<ByteBuffer> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger queuedBytes = new AtomicInteger();
+        private final AtomicBoolean flushRequested = new AtomicBoolean();
+        private volatile boolean overflow;
+        private volatile boolean closing;
+
+        // the seat of the client, used by the I/O thread only
+        private RemoteTable table;
+        private int seat = -1;
+
+        private Connection(NetworkServer server, SocketChannel channel) {
+            this.server = server;
+            this.channel = channel;
+        }
+
+        /**
+         * Queues a frame to the client (called by any thread).
+         */
+        void send(ByteBuffer frame) {
+            if (queuedBytes.addAndGet(frame.remaining()) > MAX_QUEUED_BYTES) overflow = true;
+            else queue.add(frame);
+            server.requestFlush(this);
+        }
+
+        /**
+         * Disconnects the client once its queued frames are written (called by any thread).
+         */
+        void closeAfterFlush() {
+            closing = true;
+            server.requestFlush(this);
+        }
+
+        /**
+         * Writes the queued frames, as many as the socket takes.
+         *
+         * @return - true iff all the frames were written.
+         */
+        private boolean flush() throws IOException {
+            while (true) {
+                for (ByteBuffer frame = queue.peek(); frame != null && frame.remaining() <= output.remaining();
+                     frame = queue.peek()) {
+                    queue.poll();
+                    queuedBytes.addAndGet(-frame.remaining());
+                    output.put(frame);
+                }
+                output.flip();
+                channel.write(output);
+                boolean written = !output.hasRemaining();
+                output.compact();
+                if (!written) return false;
+                if (queue.isEmpty()) return true;
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+
+        String filename = args.length > 0 ? args[0] : null;
+        Properties properties = new Properties();
+        if (filename != null)
+            try (InputStream is = Files.newInputStream(Paths.get(filename))) {
+                properties.load(is);
+            }
+        properties.setProperty("LogLevel", Level.OFF.getName());
+        if (!properties.containsKey("ExecutionMode")) properties.setProperty("ExecutionMode", "virtual");
+        properties.setProperty("Hints", "False");
+        properties.setProperty("EndGamePauseSeconds", "0");
+
+        Logger logger = Logger.getLogger("SetGameServer");
+        logger.setUseParentHandlers(false);
+        Config config = new Config(logger, properties);
+        GameMetrics metrics = new GameMetrics(config.players);
+
+        try (GameHost host = new GameHost(logger, config, new UtilImpl(config), metrics);
+             MetricsExporter exporter = new MetricsExporter(logger, metrics, "server", config.metricsPort);
+             NetworkServer server = new NetworkServer(logger, config, host, config.serverPort)) {
+            Thread io = new Thread(server, "network-io");
+            io.start();
+            System.out.println("serving tables of " + config.humanPlayers + " remote and " + config.computerPlayers
+                    + " computer players on port " + server.port() + " (at most " + config.hostMaxGames + " tables)");
+            if (exporter.port() > 0)
+                System.out.println("metrics at http://localhost:" + exporter.port() + MetricsExporter.PATH);
+            while (io.isAlive()) {
+                io.join(10000);
+                System.out.printf("connections: %d, tables: %d, games ended: %d, refused: %d%n",
+                        server.connections(), server.tables(), metrics.games(), host.refused());
+            }
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package bguspl.set;
+
+import bguspl.set.ex.Claim;
+import bguspl.set.ex.Dealer;
+import bguspl.set.ex.Table;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+/**
+ * Replays a game from its journal (see {@link MappedGameJournal}): the cards and tokens are placed on a table and
+ * removed from it as they were in the game, the dealer's verdicts are checked again, and the user interface (any
+ * implementation) is updated as the game updated it.
+ * The replayed state is checked against the journal at every record (the slot a card is placed in is empty, a card
+ * removed or a token placed is on its slot, the verdicts and the scores are the same), and the replay stops at the
+ * first difference.
+ * The replay runs at full speed, or at a time scale of the original game (e.g. 1 for real time, 2 for twice as fast).
+ * <p>
+ * Usage: Replay [journal directory] [time scale] [parallel replays]
+ * The directory is a game journal, or a directory of game journals (e.g. the JournalDirectory of a simulation), which
+ * are all replayed. A time scale of 0 (the default) replays at full speed.
+ */
+public class Replay {
+
+    private final Logger logger;
+    private final File directory;
+    private final UserInterface ui;
+    private final double timeScale;
+
+    /**
+     * @param logger    - the logger.
+     * @param directory - the game journal.
+     * @param ui        - the user interface to update.
+     * @param timeScale - the speed relative to the original game, 0 for full speed.
+     */
+    public Replay(Logger logger, File directory, UserInterface ui, double timeScale) {
+        this.logger = logger;
+        this.directory = directory;
+        this.ui = ui;
+        this.timeScale = timeScale;
+    }
+
+    /**
+     * Creates the configuration of a replayed game: the configuration saved in the journal, without delays.
+     */
+    static Config replayConfig(Logger logger, Properties journalProperties) {
+        Properties properties = new Properties();
+        properties.putAll(journalProperties);
+        properties.setProperty("LogLevel", Level.OFF.getName());
+        properties.setProperty("Hints", "False");
+        properties.setProperty("TableDelaySeconds", "0");
+        properties.setProperty("EndGamePauseSeconds", "0");
+        return new Config(logger, properties);
+    }
+
+    /**
+     * Replays the game.
+     *
+     * @return - the number of records replayed.
+     * @throws IOException           - if the journal cannot be read.
+     * @throws IllegalStateException - if the replayed game differs from the journal.
+     */
+    public long run() throws IOException {
+        GameJournalReader journal = new GameJournalReader(directory);
+        if (journal.firstSegment() != 0)
+            throw new IOException("the start of the game in " + directory + " was deleted");
+        Config config = replayConfig(logger, journal.properties());
+        Env env = new Env(logger, config, ui, new UtilImpl(config), new GameMetrics(config.players), GameTimer.shared(),
+                new GameJournalNull(), new GameRandom(config.randomSeed));
+        Table table = new Table(env);
+
+        int[] points = new int[config.players];
+        int[] scores = new int[config.players];
+        Set<Integer> pendingRemoval = new HashSet<>(); // cards of sets that scored, until they are removed
+        long records = 0;
+        long firstNanos = 0;
+        long startNanos = System.nanoTime();
+
+        while (journal.next()) {
+            records++;
+            if (records == 1) {
+                if (journal.type() != GameJournal.GAME_STARTED)
+                    throw diverged(records, "the journal does not start with the game");
+                firstNanos = journal.nanos();
+            }
+            if (timeScale > 0) {
+                long due = startNanos + (long) ((journal.nanos() - firstNanos) / timeScale);
+                for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime())
+                    LockSupport.parkNanos(wait);
+            }
+
+            int player = journal.player();
+            int slot = journal.slot();
+            int card = journal.card();
+            switch (journal.type()) {
+                case GameJournal.GAME_STARTED:
+                    if (player != config.players || journal.value() != config.deckSize)
+                        throw diverged(records, "the game has " + player + " players and " + journal.value() + " cards");
+                    break;
+
+                case GameJournal.CARD_PLACED:
+                    if (table.getSlotToCard(slot) != table.notExits || table.getCardToSlot(card) != table.notExits)
+                        throw diverged(records, "card " + card + " placed in slot " + slot + " which has card "
+                                + table.getSlotToCard(slot));
+                    table.placeCard(card, slot);
+                    break;
+
+                case GameJournal.CARD_REMOVED:
+                    if (table.getSlotToCard(slot) != card)
+                        throw diverged(records, "card " + card + " removed from slot " + slot + " which has card "
+                                + table.getSlotToCard(slot));
+                    table.removeCard(slot);
+                    pendingRemoval.remove(card);
+                    break;
+
+                case GameJournal.TOKEN_PLACED:
+                    int tokens = table.tokenCount(player);
+                    if (table.getSlotToCard(slot) != card)
+                        throw diverged(records, "player " + player + " placed a token on card " + card + " in slot "
+                                + slot + " which has card " + table.getSlotToCard(slot));
+                    table.placeToken(player, slot);
+                    if (table.tokenCount(player) != tokens + 1)
+                        throw diverged(records, "player " + player + " cannot place a token in slot " + slot);
+                    break;
+
+                case GameJournal.TOKEN_REMOVED:
+                    if (table.getSlotToCard(slot) != card || !table.removeToken(player, slot))
+                        throw diverged(records, "player " + player + " has no token to remove in slot " + slot);
+                    break;
+
+                case GameJournal.CLAIM:
+                    int verdict = slot;
+                    long tableVersion = journal.value();
+                    int[] cards = new int[card];
+                    int[] slots = new int[card];
+                    for (int i = 0; i < cards.length; i++) {
+                        if (!journal.next() || journal.type() != GameJournal.CLAIM_CARD)
+                            throw diverged(records, "a card of the claim is missing");
+                        records++;
+                        slots[i] = journal.slot();
+                        cards[i] = journal.card();
+                    }
+                    Claim claim = new Claim(player, cards, slots, 0, tableVersion);
+                    int expected = Dealer.verdict(env.util, table, claim, pendingRemoval);
+                    if (verdict != expected)
+                        throw diverged(records, "the verdict for player " + player + "'s set " + Arrays.toString(cards)
+                                + " was " + verdict + " instead of " + expected);
+                    if (expected == GameJournal.VERDICT_POINT) {
+                        points[player]++;
+                        if (scores[player] != points[player])
+                            throw diverged(records, "player " + player + " scored but has " + scores[player] + " points");
+                        for (int setCard : cards)
+                            pendingRemoval.add(setCard);
+                    }
+                    break;
+
+                case GameJournal.SCORE:
+                    scores[player] = (int) journal.value();
+                    ui.setScore(player, scores[player]);
+                    break;
+
+                case GameJournal.RESHUFFLE:
+                    if (journal.value() != table.countCards())
+                        throw diverged(records, journal.value() + " cards were reshuffled but the table has "
+                                + table.countCards());
+                    break;
+
+                case GameJournal.GAME_ENDED:
+                    if (!Arrays.equals(points, scores))
+                        throw diverged(records, "the scores " + Arrays.toString(scores) + " do not match the sets "
+                                + Arrays.toString(points));
+                    int max = Arrays.stream(scores).max().orElse(0);
+                    ui.announceWinner(IntStream.range(0, scores.length).filter(p -> scores[p] == max).toArray());
+                    break;
+
+                default:
+                    throw diverged(records, "unknown record type " + journal.type());
+            }
+        }
+        return records;
+    }
+
+    private static IllegalStateException diverged(long record, String message) {
+        return new IllegalStateException("record " + record + ": " + message);
+    }
+
+    /**
+     * @param directory - a game journal or a directory of game journals.
+     * @return - the game journals.
+     */
+    static List<File> journals(File directory) {
+        List<File> journals = new ArrayList<>();
+        if (GameJournalReader.isJournal(directory)) {
+            journals.add(directory);
+        } else {
+            File[] files = directory.listFiles(File::isDirectory);
+            if (files != null) {
+                Arrays.sort(files);
+                for (File file : files)
+                    if (GameJournalReader.isJournal(file)) journals.add(file);
+            }
+        }
+        return journals;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+
+        File directory = new File(args.length > 0 ? args[0] : "journal");
+        double timeScale = args.length > 1 ? Double.parseDouble(args[1]) : 0;
+        int parallel = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        Logger logger = Logger.getLogger("SetGameReplay");
+        logger.setUseParentHandlers(false);
+        List<File> journals = journals(directory);
+        System.out.println("replaying " + journals.size() + " games from " + directory + " (" + parallel + " in parallel, "
+                + (timeScale > 0 ? "time scale " + timeScale : "full speed") + ")");
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallel);
+        long start = System.nanoTime();
+        long records = 0;
+        int failed = 0;
+        try {
+            List<Future<Long>> results = new ArrayList<>();
+            for (File journal : journals)
+                results.add(executor.submit(() -> new Replay(logger, journal, new UserInterfaceNull(), timeScale).run()));
+            for (int i = 0; i < journals.size(); i++) {
+                try {
+                    records += results.get(i).get();
+                } catch (ExecutionException e) {
+                    failed++;
+                    System.out.println(journals.get(i) + ": " + e.getCause().getMessage());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("replayed %d games (%d records) in %.2f s (%.0f records/sec), %d failed%n",
+                journals.size() - failed, records, seconds, records / seconds, failed);
+    }
+}
@@ -0,0 +1,119 @@
+package bguspl.set;
+
+import bguspl.set.ex.Player;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs many complete games with computer players only, without a user interface and without any delays, and reports
+ * the engine's throughput (e.g. for capacity planning).
+ * <p>
+ * Usage: Simulation [games] [parallel games] [configuration file]
+ * The configuration file is read like config.properties, but human players, table delays, freeze times, hints and the
+ * end of game pause are always turned off. Unless the file says otherwise there are 4 computer players and the
+ * dealer reshuffles only when there is no legal set on the table (TurnTimeoutSeconds=0). Each game gets a random seed
+ * derived from RandomSeed and its number, so a run with the same RandomSeed makes the same random choices.
+ */
+public class Simulation {
+
+    private static final int DEFAULT_GAMES = 100;
+
+    /**
+     * Creates the configuration properties for simulated games.
+     *
+     * @param filename - a configuration file to start from (may be null).
+     * @return - the properties.
+     */
+    static Properties simulationProperties(String filename) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("ComputerPlayers", "4");
+        properties.setProperty("TurnTimeoutSeconds", "0");
+        if (filename != null)
+            try (InputStream is = Files.newInputStream(Paths.get(filename))) {
+                properties.load(is);
+            }
+
+        properties.setProperty("LogLevel", Level.OFF.getName());
+        properties.setProperty("HumanPlayers", "0");
+        properties.setProperty("Hints", "False");
+        properties.setProperty("TableDelaySeconds", "0");
+        properties.setProperty("PointFreezeSeconds", "0");
+        properties.setProperty("PenaltyFreezeSeconds", "0");
+        properties.setProperty("EndGamePauseSeconds", "0");
+        return properties;
+    }
+
+    /**
+     * Plays a single game to its end in the current thread.
+     *
+     * @param logger  - the logger for the game.
+     * @param config  - the game configuration.
+     * @param util    - the utilities object.
+     * @param metrics - the metrics to add the game's counters to.
+     * @param game    - the number of the game (names its journal, if journaling is on).
+     */
+    static void playGame(Logger logger, Config config, Util util, GameMetrics metrics, int game) {
+        try (GameJournal journal = MappedGameJournal.open(logger, config, "game-" + game)) {
+            Env env = new Env(logger, config, new UserInterfaceNull(), util, metrics, GameTimer.shared(), journal,
+                    new GameRandom(config.randomSeed).game(game));
+            new Game(env, new Player[config.players]).run();
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_GAMES;
+        int parallel = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        String filename = args.length > 2 ? args[2] : null;
+
+        Logger logger = Logger.getLogger("SetGameSimulation");
+        logger.setUseParentHandlers(false);
+        Config config = new Config(logger, simulationProperties(filename));
+        Util util = new UtilImpl(config);
+        GameMetrics metrics = new GameMetrics(config.players);
+
+        System.out.println("simulating " + games + " games (" + parallel + " in parallel) with " + config.players
+                + " computer players and a deck of " + config.deckSize + " cards, random seed " + config.randomSeed);
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallel);
+        long start = System.nanoTime();
+        try (MetricsExporter exporter = new MetricsExporter(logger, metrics, "simulation", config.metricsPort)) {
+            if (exporter.port() > 0)
+                System.out.println("metrics at http://localhost:" + exporter.port() + MetricsExporter.PATH);
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < games; ++i) {
+                int game = i;
+                results.add(executor.submit(() -> playGame(logger, config, util, metrics, game)));
+            }
+            for (Future<?> result : results)
+                result.get();
+        } finally {
+            executor.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        LatencyHistogram latency = metrics.claimLatency();
+        System.out.printf("games: %d in %.2f s (%.1f games/sec)%n", metrics.games(), seconds, metrics.games() / seconds);
+        System.out.printf("claims: %d (%.1f claims/sec)%n", metrics.claims(), metrics.claims() / seconds);
+        System.out.printf("reshuffles per game: %.2f%n", (double) metrics.reshuffles() / Math.max(1, metrics.games()));
+        System.out.printf("claim to verdict latency: p50 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+                latency.percentile(0.5) / 1e6, latency.percentile(0.99) / 1e6, latency.max() / 1e6);
+        LatencyHistogram loop = metrics.dealerLoop();
+        LatencyHistogram hold = metrics.tableWriteHold();
+        System.out.printf("dealer loop: p50 %.3f ms, p99 %.3f ms; table write lock hold: p99 %.3f ms%n",
+                loop.percentile(0.5) / 1e6, loop.percentile(0.99) / 1e6, hold.percentile(0.99) / 1e6);
+        System.out.printf("key presses dropped: %d%n", metrics.droppedPresses());
+    }
+}
@@ -65,6 +65,27 @@ public interface UserInterface {
      */
     void setFreeze(int player, long millies);
 
+    /**
+     * Count down to a deadline: the countdown time is updated by the user interface itself until it reaches 0.
+     * @param deadline    - the time the countdown reaches 0 (as in System.currentTimeMillis).
+     * @param warnMillies - the remaining time from which the countdown is shown as a warning (see setCountdown).
+     */
+    void setCountdownDeadline(long deadline, long warnMillies);
+
+    /**
+     * Show the time elapsed since the specified time, updated by the user interface itself.
+     * @param start - the time to count from (as in System.currentTimeMillis).
+     */
+    void setElapsedSince(long start);
+
+    /**
+     * Show the player as frozen until a deadline: the freeze time is updated by the user interface itself, and the
+     * player is shown without freeze once the deadline passes (see setFreeze).
+     * @param player   - the player id.
+     * @param deadline - the time the freeze ends (as in System.currentTimeMillis).
+     */
+    void setFreezeDeadline(int player, long deadline);
+
     /**
      * Set the score for the relevent player in the player score panel.
      * @param player - the player id.
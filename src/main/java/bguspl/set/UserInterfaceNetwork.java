@@ -0,0 +1,271 @@
+package bguspl.set;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static bguspl.set.GameProtocol.*;
+
+/**
+ * A user interface that sends the game to remote players (see {@link GameProtocol}).
+ * The methods are called by the dealer and player threads, often holding the table's locks, so they only queue the
+ * change (lock free) and ask the {@link NetworkServer}'s I/O thread to apply it: the I/O thread updates the mirrored
+ * table (cards, tokens, scores, timers and freezes), encodes the change once and queues it to all the connections of
+ * the table. The game threads never block, and never wait for the encoding or for a client.
+ * The mirror and the connections are used by the I/O thread only, so a client that joins in the middle of a game first
+ * receives the table as it is and then every change after it.
+ */
+public class UserInterfaceNetwork implements UserInterface {
+
+    private static final int NONE = 0;
+    private static final int FIXED = 1;
+    private static final int TICKING = 2;
+
+    private final NetworkServer server;
+    private final int table;
+    private final int players;
+    private final int tableSize;
+
+    /**
+     * The changes not applied yet, in the order they were made (queued by the game threads).
+     */
+    private final Queue<Runnable> changes = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainRequested = new AtomicBoolean();
+
+    // the mirrored table, used by the I/O thread only
+    private final int[] cards;
+    private final boolean[][] tokens; // [slot][player]
+    private final int[] scores;
+    private final long[] freezeDeadlines;
+    private int countdownMode = NONE;
+    private long countdown;            // the millis shown, or the deadline
+    private long countdownWarn;        // 1 to warn, or the warn millis
+    private int elapsedMode = NONE;
+    private long elapsed;              // the millis shown, or the start
+    private int[] winners;
+    private boolean disposed;
+
+    private final List<NetworkServer.Connection> connections = new ArrayList<>();
+
+    /**
+     * @param server - the server of the table's connections.
+     * @param table  - the table number (sent to the clients).
+     * @param config - the game configuration.
+     */
+    UserInterfaceNetwork(NetworkServer server, int table, Config config) {
+        this.server = server;
+        this.table = table;
+        this.players = config.players;
+        this.tableSize = config.tableSize;
+        cards = new int[tableSize];
+        Arrays.fill(cards, -1);
+        tokens = new boolean[tableSize][players];
+        scores = new int[players];
+        freezeDeadlines = new long[players];
+    }
+
+    /**
+     * Adds a connection of a player: sends it the table as it is, then every change (called by the I/O thread).
+     *
+     * @return - false if the game has already ended.
+     */
+    boolean join(NetworkServer.Connection connection, int player) {
+        if (disposed) return false;
+        long now = System.currentTimeMillis();
+        connection.send(joined(table, player, players, tableSize));
+        for (int slot = 0; slot < tableSize; slot++) {
+            if (cards[slot] < 0) continue;
+            connection.send(cardPlaced(slot, cards[slot]));
+            for (int p = 0; p < players; p++)
+                if (tokens[slot][p]) connection.send(frame(TOKEN_PLACED, p, slot));
+        }
+        for (int p = 0; p < players; p++) {
+            if (scores[p] != 0) connection.send(number(SCORE, p, scores[p]));
+            if (freezeDeadlines[p] > now) connection.send(number(FREEZE_DEADLINE, p, freezeDeadlines[p] - now));
+        }
+        if (countdownMode == FIXED) connection.send(GameProtocol.countdown(countdown, countdownWarn != 0));
+        if (countdownMode == TICKING) connection.send(countdownDeadline(countdown - now, countdownWarn));
+        if (elapsedMode == FIXED) connection.send(number(ELAPSED, -1, elapsed));
+        if (elapsedMode == TICKING) connection.send(number(ELAPSED_SINCE, -1, now - elapsed));
+        if (winners != null) connection.send(GameProtocol.winners(winners));
+        connections.add(connection);
+        return true;
+    }
+
+    /**
+     * Removes a connection, e.g. when it was closed (called by the I/O thread).
+     */
+    void leave(NetworkServer.Connection connection) {
+        connections.remove(connection);
+    }
+
+    /**
+     * @return - true iff the game has ended (called by the I/O thread).
+     */
+    boolean isDisposed() {
+        return disposed;
+    }
+
+    /**
+     * Applies the queued changes (called by the I/O thread).
+     */
+    void drain() {
+        drainRequested.set(false);
+        for (Runnable change; (change = changes.poll()) != null; )
+            change.run();
+    }
+
+    // queues a change for the I/O thread (called by the game threads)
+    private void change(Runnable change) {
+        if (server.isClosed()) return; // nobody is connected any more
+        changes.add(change);
+        if (drainRequested.compareAndSet(false, true)) server.requestDrain(this);
+    }
+
+    // called by the I/O thread
+    private void broadcast(ByteBuffer frame) {
+        for (NetworkServer.Connection connection : connections)
+            connection.send(frame.duplicate());
+    }
+
+    @Override
+    public void placeCard(int card, int slot) {
+        change(() -> {
+            cards[slot] = card;
+            broadcast(cardPlaced(slot, card));
+        });
+    }
+
+    @Override
+    public void removeCard(int slot) {
+        change(() -> {
+            cards[slot] = -1;
+            Arrays.fill(tokens[slot], false);
+            broadcast(frame(CARD_REMOVED, slot));
+        });
+    }
+
+    @Override
+    public void placeToken(int player, int slot) {
+        change(() -> {
+            tokens[slot][player] = true;
+            broadcast(frame(TOKEN_PLACED, player, slot));
+        });
+    }
+
+    @Override
+    public void removeTokens() {
+        change(() -> {
+            for (boolean[] slotTokens : tokens)
+                Arrays.fill(slotTokens, false);
+            broadcast(frame(ALL_TOKENS_REMOVED));
+        });
+    }
+
+    @Override
+    public void removeTokens(int slot) {
+        change(() -> {
+            Arrays.fill(tokens[slot], false);
+            broadcast(frame(TOKENS_REMOVED, slot));
+        });
+    }
+
+    @Override
+    public void removeToken(int player, int slot) {
+        change(() -> {
+            tokens[slot][player] = false;
+            broadcast(frame(TOKEN_REMOVED, player, slot));
+        });
+    }
+
+    @Override
+    public void setCountdown(long millies, boolean warn) {
+        change(() -> {
+            countdownMode = FIXED;
+            countdown = millies;
+            countdownWarn = warn ? 1 : 0;
+            broadcast(GameProtocol.countdown(millies, warn));
+        });
+    }
+
+    @Override
+    public void setElapsed(long millies) {
+        change(() -> {
+            elapsedMode = FIXED;
+            elapsed = millies;
+            broadcast(number(ELAPSED, -1, millies));
+        });
+    }
+
+    @Override
+    public void setFreeze(int player, long millies) {
+        long deadline = millies > 0 ? System.currentTimeMillis() + millies : 0;
+        change(() -> {
+            freezeDeadlines[player] = deadline;
+            broadcast(number(FREEZE, player, millies));
+        });
+    }
+
+    @Override
+    public void setCountdownDeadline(long deadline, long warnMillies) {
+        change(() -> {
+            countdownMode = TICKING;
+            countdown = deadline;
+            countdownWarn = warnMillies;
+            broadcast(countdownDeadline(deadline - System.currentTimeMillis(), warnMillies));
+        });
+    }
+
+    @Override
+    public void setElapsedSince(long start) {
+        change(() -> {
+            elapsedMode = TICKING;
+            elapsed = start;
+            broadcast(number(ELAPSED_SINCE, -1, System.currentTimeMillis() - start));
+        });
+    }
+
+    @Override
+    public void setFreezeDeadline(int player, long deadline) {
+        change(() -> {
+            freezeDeadlines[player] = deadline;
+            broadcast(number(FREEZE_DEADLINE, player, deadline - System.currentTimeMillis()));
+        });
+    }
+
+    @Override
+    public void setScore(int player, int score) {
+        change(() -> {
+            scores[player] = score;
+            broadcast(number(SCORE, player, score));
+        });
+    }
+
+    @Override
+    public void announceWinner(int[] players) {
+        int[] winners = players.clone();
+        change(() -> {
+            this.winners = winners;
+            broadcast(GameProtocol.winners(winners));
+        });
+    }
+
+    /**
+     * Ends the game for the remote players: they are sent GAME_ENDED and disconnected.
+     */
+    @Override
+    public void dispose() {
+        change(() -> {
+            if (disposed) return;
+            disposed = true;
+            broadcast(frame(GAME_ENDED));
+            for (NetworkServer.Connection connection : connections)
+                connection.closeAfterFlush();
+            connections.clear();
+        });
+    }
+}
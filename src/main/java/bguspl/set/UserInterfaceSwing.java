@@ -4,10 +4,12 @@ import bguspl.set.ex.Player;
 
 import javax.swing.*;
 import java.awt.*;
-import java.io.FileNotFoundException;
-import java.net.URL;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -15,15 +17,45 @@ import static java.lang.String.format;
 
 /**
  * Java Swing implementation of the UserInterface interface.
+ * The game threads only record the latest state (without locking), and a render loop on the event dispatch thread
+ * shows the changes at a fixed frame rate, so many updates of the same label or slot between frames cost one update.
+ * Countdowns and freezes are kept as deadlines, and the render loop derives the time to show from them.
  */
 public class UserInterfaceSwing extends JFrame implements UserInterface {
 
+    /**
+     * The number of times a second the render loop shows the changes.
+     */
+    private static final int FRAMES_PER_SECOND = 60;
+
+    private static final int TIMER_COUNTDOWN = 0;
+    private static final int TIMER_WARN = 1;
+    private static final int TIMER_ELAPSED = 2;
+    private static final int NONE = -1;
+
     private final TimerPanel timerPanel;
     private final GamePanel gamePanel;
     private final PlayersPanel playersPanel;
     private final WinnerPanel winnerPanel;
     private final Config config;
 
+    // the latest state, set by the game threads
+    private final AtomicIntegerArray slotCards; // card per slot (NONE if empty)
+    private final AtomicIntegerArray tokens; // 1 iff the player has a token on the slot, at player * tableSize + slot
+    private final AtomicReference<TimerState> timer; // null if not set yet
+    private final AtomicLongArray freezes; // freeze deadline per player (0 if not frozen)
+    private final AtomicIntegerArray scores;
+    private final AtomicBoolean dirty = new AtomicBoolean();
+
+    // the state on the screen (event dispatch thread only)
+    private final int[] shownCards;
+    private final boolean[] shownTokens;
+    private long shownTimer = NONE; // see displayedTimer
+    private final long[] shownFreezes; // see displayedFreeze
+    private final int[] shownScores;
+
+    private final Timer renderLoop;
+
     static String intInBaseToPaddedString(int n, int padding, int base) {
         return format("%" + padding + "s", Integer.toString(n, base)).replace(' ', '0');
     }
@@ -31,8 +63,23 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
     public UserInterfaceSwing(Logger logger, Config config, Player[] players) {
 
         this.config = config;
+        slotCards = new AtomicIntegerArray(config.tableSize);
+        shownCards = new int[config.tableSize];
+        for (int slot = 0; slot < config.tableSize; slot++) {
+            slotCards.set(slot, NONE);
+            shownCards[slot] = NONE;
+        }
+        tokens = new AtomicIntegerArray(config.players * config.tableSize);
+        shownTokens = new boolean[config.players * config.tableSize];
+        timer = new AtomicReference<>();
+        freezes = new AtomicLongArray(config.players);
+        shownFreezes = new long[config.players];
+        Arrays.fill(shownFreezes, NONE);
+        scores = new AtomicIntegerArray(config.players);
+        shownScores = new int[config.players];
+
         timerPanel = new TimerPanel();
-        gamePanel = new GamePanel();
+        gamePanel = new GamePanel(logger);
         playersPanel = new PlayersPanel();
         winnerPanel = new WinnerPanel();
 
@@ -66,9 +113,121 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         addKeyListener(new InputManager(logger, config, players));
         addWindowListener(new WindowManager());
 
+        renderLoop = new Timer(1000 / FRAMES_PER_SECOND, e -> render());
+        renderLoop.start();
+
         EventQueue.invokeLater(() -> setVisible(true));
     }
 
+    /**
+     * What the timer shows: a fixed time, or a countdown to / time since a given time.
+     */
+    private static final class TimerState {
+
+        private final int kind; // TIMER_COUNTDOWN or TIMER_ELAPSED
+        private final boolean live; // true iff time is a deadline (countdown) or a start time (elapsed)
+        private final long time; // the millies to show if not live
+        private final long warnMillies; // the remaining time from which a live countdown warns
+        private final boolean warn; // true iff a fixed countdown warns
+
+        private TimerState(int kind, boolean live, long time, long warnMillies, boolean warn) {
+            this.kind = kind;
+            this.live = live;
+            this.time = time;
+            this.warnMillies = warnMillies;
+            this.warn = warn;
+        }
+
+        private long millies(long now) {
+            if (!live) return time;
+            return Math.max(0, kind == TIMER_ELAPSED ? now - time : time - now);
+        }
+
+        private int kind(long millies) {
+            if (kind == TIMER_ELAPSED) return TIMER_ELAPSED;
+            boolean warning = live ? millies > 0 && millies <= warnMillies : warn;
+            return warning ? TIMER_WARN : TIMER_COUNTDOWN;
+        }
+    }
+
+    /**
+     * Shows the changes since the last frame (event dispatch thread only).
+     */
+    private void render() {
+        long now = System.currentTimeMillis();
+
+        TimerState timerState = timer.get();
+        if (timerState != null) {
+            long millies = timerState.millies(now);
+            int kind = timerState.kind(millies);
+            long shown = displayedTimer(millies, kind);
+            if (shown != shownTimer) {
+                if (kind == TIMER_ELAPSED) timerPanel.setElapsed(millies);
+                else timerPanel.setCountdown(millies, kind == TIMER_WARN);
+                shownTimer = shown;
+            }
+        }
+
+        for (int player = 0; player < config.players; player++) {
+            long millies = freezes.get(player) - now;
+            long shown = displayedFreeze(millies);
+            if (shown != shownFreezes[player]) {
+                playersPanel.setFreeze(player, millies);
+                shownFreezes[player] = shown;
+            }
+        }
+
+        if (!dirty.getAndSet(false)) return;
+
+        for (int slot = 0; slot < config.tableSize; slot++) {
+            int card = slotCards.get(slot);
+            if (card != shownCards[slot]) {
+                if (card == NONE) gamePanel.removeCard(slot);
+                else gamePanel.placeCard(slot, card);
+                shownCards[slot] = card;
+            }
+        }
+
+        for (int slot = 0; slot < config.tableSize; slot++) {
+            boolean changed = false;
+            for (int player = 0; player < config.players; player++) {
+                int index = player * config.tableSize + slot;
+                boolean token = tokens.get(index) == 1;
+                if (token != shownTokens[index]) {
+                    shownTokens[index] = token;
+                    changed = true;
+                }
+            }
+            if (changed) gamePanel.setTokens(slot, shownTokens);
+        }
+
+        for (int player = 0; player < config.players; player++) {
+            int score = scores.get(player);
+            if (score != shownScores[player]) {
+                playersPanel.setScore(player, score);
+                shownScores[player] = score;
+            }
+        }
+    }
+
+    /**
+     * @return - what the timer label shows: its kind and the seconds (hundredths when warning).
+     */
+    private static long displayedTimer(long millies, int kind) {
+        return (kind == TIMER_WARN ? millies / 10 : millies / 1000) << 2 | kind;
+    }
+
+    /**
+     * @return - what the player label shows for a freeze: the seconds left, NONE if not frozen.
+     */
+    private static long displayedFreeze(long millies) {
+        return millies > 0 ? millies / 1000 : NONE;
+    }
+
+    private void changed() {
+        dirty.set(true);
+    }
+
     private class TimerPanel extends JPanel {
 
         private final JLabel timerField;
@@ -102,39 +261,26 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
 
     private class GamePanel extends JLayeredPane {
 
-        private final Image emptyCard;
-        private final Image[] deck;
-        private final Image[][] grid;
+        private final CardImages cardImages;
+        private final int[][] grid; // card per cell (NONE if empty)
         private final boolean[][][] playerTokens;
         private final JLabel[][] tokenText;
 
-        private Image loadImageResource(String filename) {
-            URL imageResource = getClass().getClassLoader().getResource(filename);
-            if (imageResource == null)
-                throw new RuntimeException(new FileNotFoundException(filename));
-            return new ImageIcon(imageResource).getImage();
-        }
-
-        private GamePanel() {
+        private GamePanel(Logger logger) {
 
             setPreferredSize(new Dimension(config.columns * config.cellWidth, config.rows * config.cellHeight));
 
-            // init deck and load all pictures from png files
+            // the card images are loaded in the background (cards are drawn from their features meanwhile)
             assert config.featureSize < 10; // otherwise there will be naming conflicts
+            cardImages = new CardImages(logger, config, () -> EventQueue.invokeLater(this::repaint));
 
-            // load the image resources
-            deck = new Image[config.deckSize];
-            for (int i = 0; i < config.deckSize; ++i)
-                deck[i] = loadImageResource("cards/" + intInBaseToPaddedString(i, config.featureCount, config.featureSize) + ".png");
-            emptyCard = loadImageResource("cards/empty_card.png");
-
-            grid = new Image[config.rows][config.columns];
+            grid = new int[config.rows][config.columns];
             tokenText = new JLabel[config.rows][config.columns];
             playerTokens = new boolean[config.players][config.rows][config.columns];
             for (int row = 0; row < config.rows; row++) {
                 for (int column = 0; column < config.columns; column++) {
                     // init the cards on the table grid as empty cards
-                    grid[row][column] = emptyCard;
+                    grid[row][column] = NONE;
 
                     // init the JLabel selection overlay
                     tokenText[row][column] = new JLabel("");
@@ -151,44 +297,26 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         private void placeCard(int slot, int card) {
             int row = slot / config.columns;
             int column = slot % config.columns;
-            grid[row][column] = deck[card];
-            validate();
-            repaint();
+            grid[row][column] = card;
+            repaintCell(row, column);
         }
 
         private void removeCard(int slot) {
             int row = slot / config.columns;
             int column = slot % config.columns;
-            grid[row][column] = emptyCard;
-            validate();
-            repaint();
-        }
-
-        private void placeToken(int player, int slot) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            playerTokens[player][row][column] = true;
-            tokenText[row][column].setText(generatePlayersTokenText(row, column));
+            grid[row][column] = NONE;
+            repaintCell(row, column);
         }
 
-        private void removeTokens() {
-            for (int i = 0; i < config.tableSize; i++)
-                removeTokens(i);
+        private void repaintCell(int row, int column) {
+            repaint(column * config.cellWidth, row * config.cellHeight, config.cellWidth, config.cellHeight);
         }
 
-        private void removeTokens(int slot) {
+        private void setTokens(int slot, boolean[] tokens) {
             int row = slot / config.columns;
             int column = slot % config.columns;
-            for (int player = 0; player < playerTokens.length; player++) {
-                playerTokens[player][row][column] = false;
-                tokenText[row][column].setText(generatePlayersTokenText(row, column));
-            }
-        }
-
-        private void removeToken(int player, int slot) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            playerTokens[player][row][column] = false;
+            for (int player = 0; player < playerTokens.length; player++)
+                playerTokens[player][row][column] = tokens[player * config.tableSize + slot];
             tokenText[row][column].setText(generatePlayersTokenText(row, column));
         }
 
@@ -205,10 +333,20 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
 
         @Override
         public void paintComponent(Graphics g) {
-            // draw card images
-            for (int row = 0; row < config.rows; row++)
-                for (int column = 0; column < config.columns; column++)
-                    g.drawImage(grid[row][column], (column * config.cellWidth), (row * config.cellHeight), this);
+            // draw the card images of the cells to repaint only
+            Rectangle clip = g.getClipBounds();
+            int firstRow = 0, lastRow = config.rows - 1, firstColumn = 0, lastColumn = config.columns - 1;
+            if (clip != null) {
+                firstRow = Math.max(firstRow, clip.y / config.cellHeight);
+                lastRow = Math.min(lastRow, (clip.y + clip.height - 1) / config.cellHeight);
+                firstColumn = Math.max(firstColumn, clip.x / config.cellWidth);
+                lastColumn = Math.min(lastColumn, (clip.x + clip.width - 1) / config.cellWidth);
+            }
+            for (int row = firstRow; row <= lastRow; row++)
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    Image image = grid[row][column] == NONE ? cardImages.empty() : cardImages.card(grid[row][column]);
+                    g.drawImage(image, (column * config.cellWidth), (row * config.cellHeight), this);
+                }
         }
     }
 
@@ -276,63 +414,93 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
 
     @Override
     public void placeCard(int card, int slot) {
-        gamePanel.placeCard(slot, card);
+        slotCards.set(slot, card);
+        changed();
     }
 
     @Override
     public void removeCard(int slot) {
-        gamePanel.removeCard(slot);
+        slotCards.set(slot, NONE);
+        changed();
     }
 
     @Override
     public void placeToken(int player, int slot) {
-        gamePanel.placeToken(player, slot);
+        tokens.set(player * config.tableSize + slot, 1);
+        changed();
     }
 
     @Override
     public void removeTokens() {
-        gamePanel.removeTokens();
+        for (int i = 0; i < tokens.length(); i++)
+            tokens.set(i, 0);
+        changed();
     }
 
     @Override
     public void removeTokens(int slot) {
-        gamePanel.removeTokens(slot);
+        for (int player = 0; player < config.players; player++)
+            tokens.set(player * config.tableSize + slot, 0);
+        changed();
     }
 
     @Override
     public void removeToken(int player, int slot) {
-        gamePanel.removeToken(player, slot);
+        tokens.set(player * config.tableSize + slot, 0);
+        changed();
     }
 
     @Override
     public void setCountdown(long millies, boolean warn) {
-        timerPanel.setCountdown(millies, warn);
+        timer.set(new TimerState(TIMER_COUNTDOWN, false, Math.max(0, millies), 0, warn));
     }
 
     @Override
     public void setElapsed(long millies) {
-        timerPanel.setElapsed(millies);
+        timer.set(new TimerState(TIMER_ELAPSED, false, Math.max(0, millies), 0, false));
     }
 
     @Override
     public void setFreeze(int player, long millies) {
-        playersPanel.setFreeze(player, millies);
+        freezes.set(player, millies > 0 ? System.currentTimeMillis() + millies : 0);
+    }
+
+    @Override
+    public void setCountdownDeadline(long deadline, long warnMillies) {
+        timer.set(new TimerState(TIMER_COUNTDOWN, true, deadline, warnMillies, false));
+    }
+
+    @Override
+    public void setElapsedSince(long start) {
+        timer.set(new TimerState(TIMER_ELAPSED, true, start, 0, false));
+    }
+
+    @Override
+    public void setFreezeDeadline(int player, long deadline) {
+        freezes.set(player, deadline);
     }
 
     @Override
     public void setScore(int player, int score) {
-        playersPanel.setScore(player, score);
+        scores.set(player, score);
+        changed();
     }
 
     @Override
     public void announceWinner(int[] players) {
-        playersPanel.setVisible(false);
-        winnerPanel.announceWinner(players);
-        winnerPanel.setVisible(true);
+        EventQueue.invokeLater(() -> {
+            render(); // the final scores
+            playersPanel.setVisible(false);
+            winnerPanel.announceWinner(players);
+            winnerPanel.setVisible(true);
+        });
     }
 
     @Override
     public void dispose() {
-        super.dispose();
+        EventQueue.invokeLater(() -> {
+            renderLoop.stop();
+            super.dispose();
+        });
     }
 }
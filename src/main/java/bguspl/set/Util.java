@@ -31,6 +31,15 @@ public interface Util {
      */
     boolean testSet(int[] cards);
 
+    /**
+     * Finds the card that completes two cards into a legal set (for sets of 3 cards, i.e. config.featureSize == 3).
+     *
+     * @param a - the first card id.
+     * @param b - the second card id.
+     * @return - the id of the unique card forming a legal set with a and b, or -1 if there is no such card.
+     */
+    int completeSet(int a, int b);
+
     /**
      * Finds and returns up to count sets in the given collection of cards.
      *
@@ -40,6 +49,16 @@ public interface Util {
      */
     List<int[]> findSets(List<Integer> deck, int count);
 
+    /**
+     * Finds and returns up to count sets that contain the given card and other cards from the given collection.
+     *
+     * @param card  - the card id every set must contain.
+     * @param deck  - a collection of cards (may not include null objects, may include card itself).
+     * @param count - the maximum number of sets to find.
+     * @return - a list of up to count integer arrays, each one contains the card ids of a legal set.
+     */
+    List<int[]> findSetsWith(int card, List<Integer> deck, int count);
+
     /**
      * Spin a random number of times (for debugging/testing).
      */
@@ -1,7 +1,7 @@
 package bguspl.set;
 
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.IntStream;
@@ -11,10 +11,59 @@ import java.util.stream.IntStream;
  */
 public class UtilImpl implements Util {
 
+    /**
+     * The largest deck for which the pairwise completion table is built (the table holds deckSize^2 ints).
+     */
+    private static final int MAX_COMPLETION_TABLE_DECK = 1024;
+
     private final Config config;
 
+    /**
+     * The features of every card in the deck, decoded once.
+     */
+    private final int[][] features;
+
+    /**
+     * completion[a * deckSize + b] is the card completing a and b into a set (null unless featureSize == 3).
+     */
+    private final int[] completion;
+
+    /**
+     * Per thread working arrays for findSets (so that scanning a deck does not allocate).
+     */
+    private final ThreadLocal<Scratch> scratch;
+
+    private static class Scratch {
+
+        private int[] cards = new int[0];
+        private final int[] positions;
+
+        private Scratch(int deckSize) {
+            positions = new int[deckSize];
+        }
+
+        private int[] cards(int size) {
+            if (cards.length < size) cards = new int[size];
+            return cards;
+        }
+    }
+
     public UtilImpl(Config config) {
         this.config = config;
+
+        features = new int[config.deckSize][config.featureCount];
+        for (int card = 0; card < config.deckSize; ++card)
+            cardToFeatures(card, features[card]);
+
+        if (config.featureSize == 3 && config.deckSize <= MAX_COMPLETION_TABLE_DECK) {
+            int[] table = new int[config.deckSize * config.deckSize];
+            for (int a = 0; a < config.deckSize; ++a)
+                for (int b = 0; b < config.deckSize; ++b)
+                    table[a * config.deckSize + b] = complete(a, b);
+            completion = table;
+        } else completion = null;
+
+        scratch = ThreadLocal.withInitial(() -> new Scratch(config.deckSize));
     }
 
     private void cardToFeatures(int card, int[] features) {
@@ -24,8 +73,13 @@ public class UtilImpl implements Util {
         }
     }
 
+    private boolean inDeck(int card) {
+        return card >= 0 && card < config.deckSize;
+    }
+
     @Override
     public int[] cardToFeatures(int card) {
+        if (inDeck(card)) return features[card].clone();
         int[] features = new int[config.featureCount];
         cardToFeatures(card, features);
         return features;
@@ -33,28 +87,103 @@ public class UtilImpl implements Util {
 
     @Override
     public int[][] cardsToFeatures(int[] cards) {
-        int[][] features = new int[cards.length][config.featureCount];
-        IntStream.range(0, cards.length).forEach(i -> cardToFeatures(cards[i], features[i]));
+        int[][] features = new int[cards.length][];
+        IntStream.range(0, cards.length).forEach(i -> features[i] = cardToFeatures(cards[i]));
         return features;
     }
 
+    /**
+     * Finds the card that completes the first length cards into a legal set of length + 1 cards. For every feature
+     * the given values must be either all the same (the missing value is that value) or all different (the missing
+     * value is the one not used yet). Only unique when length >= 2.
+     *
+     * @param cards  - the card ids (all in the deck).
+     * @param length - the number of cards to use (config.featureSize - 1 for a full set).
+     * @return - the completing card id, or -1 if no card completes the given cards.
+     */
+    private int complete(int[] cards, int length) {
+        if (length == 2 && completion != null) return completion[cards[0] * config.deckSize + cards[1]];
+
+        int allValues = config.featureSize * (config.featureSize - 1) / 2;
+        int card = 0;
+        for (int i = 0; i < config.featureCount; ++i) {
+            int first = features[cards[0]][i];
+            int sum = 0;
+            long seen = 0;
+            boolean sameSame = true;
+            for (int j = 0; j < length; ++j) {
+                int value = features[cards[j]][i];
+                sameSame &= value == first;
+                seen |= 1L << value;
+                sum += value;
+            }
+
+            int missing;
+            if (sameSame) missing = first;
+            else if (Long.bitCount(seen) == length) missing = allValues - sum; // butDifferent
+            else return -1;
+            card = card * config.featureSize + missing;
+        }
+        return card;
+    }
+
+    /**
+     * Finds the card that completes two cards into a legal set of 3 cards, feature by feature (for building the
+     * completion table, or when there is none).
+     *
+     * @param a - a card id (in the deck).
+     * @param b - another card id (in the deck).
+     * @return - the completing card id.
+     */
+    private int complete(int a, int b) {
+        int card = 0;
+        for (int i = 0; i < config.featureCount; ++i) {
+            int first = features[a][i];
+            int second = features[b][i];
+            int missing = first == second ? first : 3 - first - second; // sameSame or butDifferent
+            card = card * config.featureSize + missing;
+        }
+        return card;
+    }
+
+    @Override
+    public int completeSet(int a, int b) {
+        if (config.featureSize != 3 || !inDeck(a) || !inDeck(b)) return -1;
+        if (completion != null) return completion[a * config.deckSize + b];
+        return complete(a, b);
+    }
+
     @Override
     public boolean testSet(int[] cards) {
-        int[][] features = cardsToFeatures(Arrays.copyOf(cards, cards.length));
+        for (int card : cards)
+            if (!inDeck(card)) return false;
+
+        if (config.featureSize == 3 && cards.length == 3)
+            return completeSet(cards[0], cards[1]) == cards[2];
+        if (config.featureSize > 3 && cards.length == config.featureSize)
+            return complete(cards, cards.length - 1) == cards[cards.length - 1];
+        return testFeatures(cards);
+    }
+
+    /**
+     * Checks feature by feature that every feature is either the same in all cards or different in all cards
+     * (used when the completion of the cards is not unique, i.e. sets of less than 3 cards).
+     */
+    private boolean testFeatures(int[] cards) {
         for (int i = 0; i < config.featureCount; ++i) {
             boolean sameSame = true, butDifferent = true;
 
             // check if this features is sameSame in all cards
-            for (int j = 1; j < features.length; ++j)
-                if (features[0][i] != features[j][i]) {
+            for (int j = 1; j < cards.length; ++j)
+                if (features[cards[0]][i] != features[cards[j]][i]) {
                     sameSame = false;
                     break;
                 }
 
             // check if this feature is butDifferent in all cards
-            for (int j = 1; j < features.length; ++j)
-                for (int k = j; k < features.length; ++k)
-                    if (features[j - 1][i] == features[k][i]) {
+            for (int j = 1; j < cards.length; ++j)
+                for (int k = j; k < cards.length; ++k)
+                    if (features[cards[j - 1]][i] == features[cards[k]][i]) {
                         butDifferent = false;
                         break;
                     }
@@ -66,7 +195,99 @@ public class UtilImpl implements Util {
 
     @Override
     public List<int[]> findSets(List<Integer> deck, int count) {
-        LinkedList<int[]> sets = new LinkedList<>();
+        if (config.featureSize < 3) return findSetsByCombinations(deck, count);
+
+        List<int[]> sets = new ArrayList<>();
+        scan(deck, new int[config.featureSize], 0, count, sets);
+        return sets;
+    }
+
+    @Override
+    public List<int[]> findSetsWith(int card, List<Integer> deck, int count) {
+        List<int[]> sets = new ArrayList<>();
+        if (!inDeck(card)) return sets;
+
+        if (config.featureSize < 3) {
+            List<Integer> cards = new ArrayList<>();
+            cards.add(card);
+            deck.stream().filter(other -> other != card).forEach(cards::add);
+            for (int[] set : findSetsByCombinations(cards, Integer.MAX_VALUE)) {
+                if (sets.size() >= count) break;
+                if (Arrays.stream(set).anyMatch(other -> other == card)) sets.add(set);
+            }
+            return sets;
+        }
+
+        int[] set = new int[config.featureSize];
+        set[0] = card;
+        scan(deck, set, 1, count, sets);
+        return sets;
+    }
+
+    /**
+     * Goes over every combination of the deck that completes the first fixed cards of set into set minus one card,
+     * in lexicographic order, and looks up the card completing it. A set is reported only from its first positions
+     * (the completing card must come later in the deck), so sets come out in the same order as r-combinations.
+     *
+     * @param deck  - the cards to choose from (cards that are already in set are skipped).
+     * @param set   - a working array of config.featureSize cards, the first fixed of which are part of every set.
+     * @param fixed - the number of fixed cards.
+     * @param count - the maximum number of sets to have in sets.
+     * @param sets  - the list to add the sets found to (each sorted by card id).
+     */
+    private void scan(List<Integer> deck, int[] set, int fixed, int count, List<int[]> sets) {
+        int r = config.featureSize;
+        int k = r - 1 - fixed;
+
+        // copy the deck and mark every card with its (1-based) position, 0 means "not in the deck"
+        Scratch scratch = this.scratch.get();
+        int[] cards = scratch.cards(deck.size());
+        int[] positions = scratch.positions;
+        int n = 0;
+        for (int card : deck) {
+            boolean isFixed = false;
+            for (int i = 0; i < fixed; ++i)
+                isFixed |= set[i] == card;
+            if (isFixed) continue;
+            cards[n] = card;
+            positions[card] = ++n;
+        }
+
+        try {
+            if (n <= k) return;
+            int[] combination = new int[k];
+            for (int i = 0; i < k; ++i)
+                combination[i] = i;
+
+            while (combination[k - 1] < n - 1) {
+                for (int i = 0; i < k; ++i)
+                    set[fixed + i] = cards[combination[i]];
+                int missing = complete(set, r - 1);
+                if (missing != -1 && positions[missing] - 1 > combination[k - 1]) {
+                    set[r - 1] = missing;
+                    int[] found = set.clone();
+                    Arrays.sort(found);
+                    sets.add(found);
+                    if (sets.size() >= count) return;
+                }
+
+                // generate next combination in lexicographic order (the last position is left for the missing card)
+                int t = k - 1;
+                while (t != 0 && combination[t] == n - 1 - k + t) --t;
+                combination[t]++;
+                for (int i = t + 1; i < k; i++) combination[i] = combination[i - 1] + 1;
+            }
+        } finally {
+            for (int i = 0; i < n; ++i)
+                positions[cards[i]] = 0;
+        }
+    }
+
+    /**
+     * Tests every r-combination of the deck (used when sets are too small for the completing card to be unique).
+     */
+    private List<int[]> findSetsByCombinations(List<Integer> deck, int count) {
+        List<int[]> sets = new ArrayList<>();
         int n = deck.size();
         int r = config.featureSize;
         int[] combination = new int[r];
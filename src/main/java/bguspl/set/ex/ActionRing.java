@@ -0,0 +1,125 @@
+package bguspl.set.ex;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed-capacity single-producer / single-consumer ring of a player's key presses: the slot pressed, the card that
+ * was in it and the time of the press.
+ * The producer (the keyboard or the AI thread) and the consumer (the player thread) never block each other and
+ * nothing is allocated per press. Presses that do not fit are dropped and counted.
+ */
+public class ActionRing {
+
+    private final int capacity;
+    private final int[] slots;
+    private final int[] cards;
+    private final long[] pressNanos;
+
+    /**
+     * The number of presses taken out of the ring (written by the consumer only).
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * The number of presses added to the ring (written by the producer only).
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * The producer's last view of head, re-read only when the ring looks full.
+     */
+    private long headCache;
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param capacity - the maximum number of presses waiting in the ring.
+     */
+    public ActionRing(int capacity) {
+        this.capacity = capacity;
+        slots = new int[capacity];
+        cards = new int[capacity];
+        pressNanos = new long[capacity];
+    }
+
+    /**
+     * Adds a key press (producer only).
+     *
+     * @param slot       - the slot pressed.
+     * @param card       - the card in the slot when it was pressed.
+     * @param pressNanos - the time of the press (System.nanoTime).
+     * @return - true iff the press was added, false if the ring was full and the press was dropped.
+     */
+    public boolean offer(int slot, int card, long pressNanos) {
+        long position = tail.get();
+        if (position - headCache >= capacity) {
+            headCache = head.get();
+            if (position - headCache >= capacity) {
+                dropped.incrementAndGet();
+                return false;
+            }
+        }
+        int index = (int) (position % capacity);
+        slots[index] = slot;
+        cards[index] = card;
+        this.pressNanos[index] = pressNanos;
+        tail.lazySet(position + 1); // publishes the entry to the consumer
+        return true;
+    }
+
+    /**
+     * @return - true iff there are no presses to take.
+     */
+    public boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    /**
+     * @return - the number of presses waiting in the ring.
+     */
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    /**
+     * @return - true iff a press offered now would be dropped.
+     */
+    public boolean isFull() {
+        return tail.get() - head.get() >= capacity;
+    }
+
+    /**
+     * @return - the slot of the oldest press (consumer only, the ring must not be empty).
+     */
+    public int slot() {
+        return slots[(int) (head.get() % capacity)];
+    }
+
+    /**
+     * @return - the card of the oldest press (consumer only, the ring must not be empty).
+     */
+    public int card() {
+        return cards[(int) (head.get() % capacity)];
+    }
+
+    /**
+     * @return - the time of the oldest press (consumer only, the ring must not be empty).
+     */
+    public long pressNanos() {
+        return pressNanos[(int) (head.get() % capacity)];
+    }
+
+    /**
+     * Takes the oldest press out of the ring (consumer only, the ring must not be empty).
+     */
+    public void remove() {
+        head.lazySet(head.get() + 1);
+    }
+
+    /**
+     * @return - the number of presses dropped because the ring was full.
+     */
+    public long dropped() {
+        return dropped.get();
+    }
+}
@@ -0,0 +1,75 @@
+package bguspl.set.ex;
+
+/**
+ * An immutable snapshot of a set a player sent to the dealer to check: the cards the player's tokens were on and the
+ * table version at the time.
+ *
+ * @inv cards.length == slots.length
+ */
+public final class Claim {
+
+    /**
+     * The id of the player who sent the set.
+     */
+    public final int player;
+
+    /**
+     * The cards of the set and the slots they were in.
+     */
+    private final int[] cards;
+    private final int[] slots;
+
+    /**
+     * The time (System.nanoTime) of the key press that completed the set.
+     */
+    public final long pressNanos;
+
+    /**
+     * The table version (see Table.version) when the set was sent.
+     */
+    public final long tableVersion;
+
+    /**
+     * @param player       - the id of the player.
+     * @param cards        - the card ids (copied).
+     * @param slots        - the slots of the cards, respectively (copied).
+     * @param pressNanos   - the time of the key press that completed the set.
+     * @param tableVersion - the table version.
+     */
+    public Claim(int player, int[] cards, int[] slots, long pressNanos, long tableVersion) {
+        this.player = player;
+        this.cards = cards.clone();
+        this.slots = slots.clone();
+        this.pressNanos = pressNanos;
+        this.tableVersion = tableVersion;
+    }
+
+    /**
+     * @return - the number of cards in the set.
+     */
+    public int size() {
+        return cards.length;
+    }
+
+    public int card(int i) {
+        return cards[i];
+    }
+
+    public int slot(int i) {
+        return slots[i];
+    }
+
+    /**
+     * @return - a copy of the card ids.
+     */
+    public int[] cards() {
+        return cards.clone();
+    }
+
+    /**
+     * @return - a copy of the slots of the cards.
+     */
+    public int[] slots() {
+        return slots.clone();
+    }
+}
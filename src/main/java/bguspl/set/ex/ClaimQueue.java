@@ -0,0 +1,105 @@
+package bguspl.set.ex;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A lock-free multi-producer / single-consumer queue of the sets the players send to the dealer.
+ * Players add claims from their threads without blocking, and the dealer (the only consumer) polls them and waits
+ * for them without holding any lock.
+ */
+public class ClaimQueue {
+
+    private static final class Node {
+
+        private Claim claim;
+        private volatile Node next;
+
+        private Node(Claim claim) {
+            this.claim = claim;
+        }
+    }
+
+    /**
+     * The last node added (producers swap themselves in here).
+     */
+    private final AtomicReference<Node> head;
+
+    /**
+     * The last node consumed, its next node is the oldest claim (consumer only).
+     */
+    private Node tail;
+
+    /**
+     * The consumer thread while it is waiting in await, null otherwise.
+     */
+    private volatile Thread consumer;
+
+    /**
+     * True iff wakeUp was called since the consumer last waited.
+     */
+    private volatile boolean woken;
+
+    public ClaimQueue() {
+        tail = new Node(null);
+        head = new AtomicReference<>(tail);
+    }
+
+    /**
+     * Adds a claim to the queue and wakes the consumer (may be called by any thread).
+     *
+     * @param claim - the claim.
+     */
+    public void add(Claim claim) {
+        Node node = new Node(claim);
+        Node previous = head.getAndSet(node);
+        previous.next = node;
+        Thread waiting = consumer;
+        if (waiting != null) LockSupport.unpark(waiting);
+    }
+
+    /**
+     * Takes the oldest claim out of the queue (consumer only).
+     *
+     * @return - the claim, or null if the queue is empty.
+     */
+    public Claim poll() {
+        Node next = tail.next;
+        if (next == null) return null;
+        Claim claim = next.claim;
+        next.claim = null;
+        tail = next;
+        return claim;
+    }
+
+    /**
+     * @return - true iff there are no claims to poll.
+     */
+    public boolean isEmpty() {
+        return tail.next == null;
+    }
+
+    /**
+     * Waits until a claim is added, wakeUp is called or the timeout passes, whichever comes first (consumer only).
+     * May return earlier.
+     *
+     * @param timeoutMillis - the maximum time to wait in milliseconds.
+     */
+    public void await(long timeoutMillis) {
+        consumer = Thread.currentThread();
+        if (isEmpty() && !woken && timeoutMillis > 0)
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(Math.min(timeoutMillis, Long.MAX_VALUE / 1000000)));
+        consumer = null;
+        woken = false;
+    }
+
+    /**
+     * Makes the consumer return from await (or not wait the next time it calls it).
+     */
+    public void wakeUp() {
+        woken = true;
+        Thread waiting = consumer;
+        if (waiting != null) LockSupport.unpark(waiting);
+    }
+}
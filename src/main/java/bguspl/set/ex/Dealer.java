@@ -1,12 +1,19 @@
 package bguspl.set.ex;
 
 import bguspl.set.Env;
+import bguspl.set.GameEvents;
+import bguspl.set.GameJournal;
+import bguspl.set.GameRandom;
+import bguspl.set.GameThreads;
+import bguspl.set.Util;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Queue;
+import java.util.Random;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -42,8 +49,9 @@ public class Dealer implements Runnable {
     
     //added fileds
     private long lastResetTime;
-    private final long powerNap = 10; 
     private Queue <Integer> removedCards;
+    private final SetsInGame setsInGame;//sets left in deck and table
+    private final Random random;//the dealer thread's random stream
     
     
     public Dealer(Env env, Table table, Player[] players) {
@@ -53,6 +61,8 @@ public class Dealer implements Runnable {
         this.table = table;
         this.players = players;
         deck = IntStream.range(0, env.config.deckSize).boxed().collect(Collectors.toList());
+        this.setsInGame=new SetsInGame(env, deck);
+        this.random=env.random.stream(GameRandom.DEALER);
         this.terminate=false;
     }
 
@@ -64,18 +74,19 @@ public class Dealer implements Runnable {
         env.logger.info("thread " + Thread.currentThread().getName() + " starting.");
 
          for(int i=0;i<players.length;i++){//added create Threads
-             Thread playerThread =new Thread(players[i],env.config.playerNames[i]);
+             Thread playerThread =GameThreads.newThread(env.config,players[i],env.config.playerNames[i]);
              playerThread.start();
          }
+        env.journal.gameStarted(players.length, env.config.deckSize);
         while (!shouldFinish()) {
-            table.SemAcquire();
             placeCardsOnTable();
-            table.sem.release();
             timerLoop();
-            updateTimerDisplay(false);
             removeAllCardsFromTable();
         }
+        if(!terminate) terminate();//game over, stop the players
         announceWinners();
+        env.journal.gameEnded();
+        env.metrics.gameFinished();
         env.logger.info("thread " + Thread.currentThread().getName() + " terminated.");
     }
 
@@ -86,12 +97,11 @@ public class Dealer implements Runnable {
         while (!terminate && ((System.currentTimeMillis() - lastResetTime < reshuffleTime)||(reshuffleTime<=0)
         &&!table.notExistSetinTable())&&!(table.notExistSetinTable()&&deck.isEmpty())) {
             sleepUntilWokenOrTimeout();
-            updateTimerDisplay(false);
-            table.SemAcquire();   
+            long start = System.nanoTime();
             checkQueueSet();
             removeCardsFromTable();
             placeCardsOnTable();
-            table.sem.release();
+            env.metrics.dealerLoop(System.nanoTime() - start);
         }
     }
 
@@ -100,6 +110,7 @@ public class Dealer implements Runnable {
      */
     public void terminate() {
         terminate=true;
+        notifyTheards();//wake the dealer if it is waiting
         for (int i=players.length-1; i>=0; i--){
             players[i].terminate();
         }
@@ -111,17 +122,19 @@ public class Dealer implements Runnable {
      * @return true iff the game should be finished.
      */
     private boolean shouldFinish() {
-        return terminate || env.util.findSets(deck, 1).size() == 0;
+        return terminate || setsInGame.isEmpty();
     }
 
     /**
      * Checks cards should be removed from the table and removes them.
      */
     private void removeCardsFromTable() {
-        if(!removedCards.isEmpty()){
+        while(!removedCards.isEmpty()){//remove the whole set before the table is checked again
             int id = removedCards.poll();
             int slot =table.getCardToSlot(id);
-            table.removeCard(slot);
+            if(slot!=table.notExits){
+                table.removeCard(slot);
+            }
         }
     }
 
@@ -129,7 +142,7 @@ public class Dealer implements Runnable {
      * Check if any cards can be removed from the deck and placed on the table.
      */
     private void placeCardsOnTable() {
-        Collections.shuffle(deck);
+        Collections.shuffle(deck, random);
         if(!deck.isEmpty() && table.countCards() < env.config.tableSize){
             updateTimerDisplay(true);
             while(!deck.isEmpty() && table.countCards() < env.config.tableSize){        
@@ -145,47 +158,27 @@ public class Dealer implements Runnable {
     }
 
     /**
-     * Sleep for a fixed amount of time or until the thread is awakened for some purpose.
+     * Sleep until a player sends a set to check, or until the turn times out.
      */
-    private void sleepUntilWokenOrTimeout() {//sleep for fixed time=0.01 sec
-        if(0<=env.config.turnTimeoutMillis){
-            try {
-                Thread.sleep(powerNap);
-            } catch (InterruptedException ignored) {};
-        }
-        else {try {
-            synchronized (this){//wait for action
-                wait();
-            }
-            } catch (InterruptedException ignored) {}         
+    private void sleepUntilWokenOrTimeout() {
+        if(!terminate){
+            long timeout = env.config.turnTimeoutMillis>0 ? lastResetTime+env.config.turnTimeoutMillis : Long.MAX_VALUE;
+            table.playersCardCheck.await(timeout-System.currentTimeMillis());//players wake it when adding a set
         }
     }
      
     /**
      * Reset and/or update the countdown and the countdown display.
+     * The ui counts down to the deadline (or up from the reset) by itself, so only resets are sent to it.
      */
     private void updateTimerDisplay(boolean reset) {
         if(reset){
             lastResetTime = System.currentTimeMillis();
             if(env.config.turnTimeoutMillis==0){
-                env.ui.setElapsed(0);
+                env.ui.setElapsedSince(lastResetTime);
             }
             if(env.config.turnTimeoutMillis>0){
-                env.ui.setCountdown(env.config.turnTimeoutMillis,false);
-            }
-        }
-        else {
-            if(env.config.turnTimeoutMillis > 0){
-                if (env.config.turnTimeoutMillis-(System.currentTimeMillis()-lastResetTime) <= env.config.turnTimeoutWarningMillis){
-                    env.ui.setCountdown(env.config.turnTimeoutMillis-(System.currentTimeMillis()-lastResetTime),true);
-                    if(env.config.turnTimeoutMillis-(System.currentTimeMillis()-lastResetTime)<=0){
-                        env.ui.setCountdown(0,false);
-                    }
-                }
-                else env.ui.setCountdown(env.config.turnTimeoutMillis-(System.currentTimeMillis()-lastResetTime),false);
-            }
-            else if(env.config.turnTimeoutMillis==0){//time from last reset
-                env.ui.setElapsed(System.currentTimeMillis()-lastResetTime);
+                env.ui.setCountdownDeadline(lastResetTime+env.config.turnTimeoutMillis,env.config.turnTimeoutWarningMillis);
             }
         }
     }
@@ -194,16 +187,21 @@ public class Dealer implements Runnable {
      * Returns all the cards from the table to the deck.
      */
     private void removeAllCardsFromTable() {
-        table.SemAcquire();
+        long start = System.nanoTime();
+        boolean reshuffle=!setsInGame.isEmpty() && !terminate;//the game goes on with a new table
+        if(reshuffle) env.metrics.reshuffle();
         List<Integer> cardsOnTable =table.currentCardonTable();
-        Collections.shuffle(cardsOnTable);
+        if(reshuffle) env.journal.reshuffle(table.countCards());
+        Collections.shuffle(cardsOnTable, random);
+        int returned = 0;
         for (Integer card : cardsOnTable) {
             if(card!=table.notExits){
                 deck.add(card);
                 table.removeCard(table.getCardToSlot(card));
+                returned++;
             }
         }
-        table.sem.release();
+        if(reshuffle) GameEvents.reshuffle(returned, deck.size(), System.nanoTime() - start);//not the final clear
     }
 
     /**
@@ -228,36 +226,56 @@ public class Dealer implements Runnable {
     }
     //add function
     private void checkQueueSet(){
-        while(!table.playersCardCheck.isEmpty()){//have players waiting for set check
-            boolean removedCard=false;
-            int PlayerId = table.playersCardCheck.poll();//get player id
-            List<Integer> playertokens = table.getPlayerTokens(PlayerId);//get player token list
-            int[] setOfCards =new int[env.config.featureSize]; 
-            int i=0;
-            for(int slots: playertokens){//check players tokens
-                setOfCards[i]=table.getSlotToCard(slots);//set
-                if(removedCards.contains(setOfCards[i])){// check if card already removed from other player set
-                    removedCard=true;
+        Claim claim;
+        while((claim=table.playersCardCheck.poll())!=null){//have players waiting for set check
+            long checkStart = System.nanoTime();
+            String verdict = "stale";
+            int PlayerId = claim.player;
+            int[] setOfCards = claim.cards();
+            int verdictCode = verdict(env.util, table, claim, removedCards);
+            if(verdictCode==GameJournal.VERDICT_POINT){
+                verdict = "point";
+                players[PlayerId].point();//the player stays frozen until the timer ends the freeze
+                for(int j = 0 ; j <setOfCards.length;j++){
+                    removedCards.add(setOfCards[j]);//add card id to removed
+                    setsInGame.remove(setOfCards[j]);//card leaves the game
                 }
-                i++;
             }
-            if(removedCard==false){//exists cards
-                if(env.util.testSet(setOfCards)){
-                    players[PlayerId].waitPoint=true;//add point in player loop
-                    for(int j = 0 ; j <env.config.featureSize;j++){
-                        removedCards.add(setOfCards[j]);//add card id to removed
-                    }
-                }
-                else {
-                    players[PlayerId].waitPenalty=true;//Penalty player loop
-                }
+            else if(verdictCode==GameJournal.VERDICT_PENALTY){
+                verdict = "penalty";
+                players[PlayerId].penalty();
             }
             players[PlayerId].wait=false;
+            env.journal.claimVerified(PlayerId, verdictCode, claim.slots(), setOfCards, claim.tableVersion);
+            long now = System.nanoTime();
+            env.metrics.claimVerified(now-claim.pressNanos);
+            GameEvents.claimVerified(PlayerId, verdict, now-checkStart, now-claim.pressNanos);
             players[PlayerId].notifyThreads();//notify all waiting players threads
         }
     }
-    public synchronized void notifyTheards(){
-        notifyAll();
+    /**
+     * The dealer's rule for a set sent by a player (also used to replay a game journal).
+     * @param util           - the utilities object (checks the set).
+     * @param table          - the table the set was sent on.
+     * @param claim          - the set.
+     * @param pendingRemoval - the cards of sets that scored and were not removed from the table yet.
+     * @return               - GameJournal.VERDICT_POINT or VERDICT_PENALTY, or VERDICT_STALE if a card of the set
+     *                         left the table (or is about to) since the set was sent.
+     */
+    public static int verdict(Util util, Table table, Claim claim, Collection<Integer> pendingRemoval){
+        if(!table.isCurrent(claim)){//a card was taken off the table since the set was sent
+            return GameJournal.VERDICT_STALE;
+        }
+        for(int i=0;i<claim.size();i++){
+            if(pendingRemoval.contains(claim.card(i))){// check if card already removed from other player set
+                return GameJournal.VERDICT_STALE;
+            }
+        }
+        return util.testSet(claim.cards()) ? GameJournal.VERDICT_POINT : GameJournal.VERDICT_PENALTY;
+    }
+    //wake the dealer thread
+    public void notifyTheards(){
+        table.playersCardCheck.wakeUp();
     }
     
 }
@@ -2,12 +2,14 @@ package bguspl.set.ex;
 
 
 import bguspl.set.Env;
+import bguspl.set.GameEvents;
+import bguspl.set.GameRandom;
+import bguspl.set.GameThreads;
 
 //added
-import java.util.Collections;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
 /**
  * This class manages the players' threads and data
  *
@@ -34,12 +36,12 @@ public class Player implements Runnable {
     /**
      * The thread representing the current player.
      */
-    private Thread playerThread;
+    private volatile Thread playerThread;
 
     /**
      * The thread of the AI (computer) player (an additional thread used to generate key presses).
      */
-    private Thread aiThread;
+    private volatile Thread aiThread;
 
     /**
      * True iff the player is human (not a computer player).
@@ -66,23 +68,24 @@ public class Player implements Runnable {
      * @param human  - true iff the player is a human player (i.e. input is provided manually, via the keyboard).
      */
     //added
-    public boolean waitPoint=false;
-    public boolean waitPenalty =false;
-    public boolean wait = false;
-    private final long defaultState = 0;
-    private final long powerNap =10;
-    private Queue<Integer> actionQueue;//queue of actions
-    private Queue <Integer> cardPressed;//card pressed
+    public volatile boolean waitPoint=false;//frozen after a point
+    public volatile boolean waitPenalty =false;//frozen after a penalty
+    public volatile boolean wait = false;
+    private final ActionRing actions;//key presses, taken by the player thread only
+    private volatile long discardBefore;//presses before the last verdict are ignored
+    private final Random random;//random stream of the ai thread
     private Dealer dealer;
+    private static final long EMPTY_TABLE_WAIT_NANOS = 1000000;//ai wait while there are too few cards for a set (1 ms)
 
     public Player(Env env, Dealer dealer, Table table, int id, boolean human) {
-        this.actionQueue = new LinkedBlockingQueue<>(table.maxToken);
-        this.cardPressed =new LinkedBlockingQueue<>(table.maxToken);
+        this.actions = new ActionRing(table.maxToken);
+        this.discardBefore = System.nanoTime();
         this.dealer=dealer;
         this.env = env;
         this.table = table;
         this.id = id;
         this.human = human;
+        this.random = env.random.stream(GameRandom.PLAYERS + id);
     }
 
     /**
@@ -95,33 +98,20 @@ public class Player implements Runnable {
         if (!human) createArtificialIntelligence();
         while (!terminate) {
             //main player loop
-            if(waitPoint){//get point
-                point();
-            }
-            else if(waitPenalty){//penalty for ilegal set 
-                penalty();
+            if(waitPoint||waitPenalty){//frozen until the timer ends the freeze
+                sleepWhileFrozen();
             }
             else {
-                env.ui.setFreeze(id,defaultState);//default timer
-                while(table.getPlayerTokens(id).size()<=table.maxToken && !wait && !terminate){//do actions
-                    if(!actionQueue.isEmpty()){
-                        doAction(actionQueue.poll());
+                while(table.tokenCount(id)<=table.maxToken && !wait && !terminate){//do actions
+                    if(!actions.isEmpty()){
+                        doAction();
                     }
                     else {                    
-                        try {
-                        synchronized (this){//wait for action
-                            wait();
-                        }
-                        } catch (InterruptedException ignored) {}         
+                        LockSupport.park(this);//wait for action
                     }
                     }            
-                while((table.getPlayerTokens(id).size()== table.maxToken && wait) &&!terminate){//wait for dealer check
-                    dealer.notifyTheards();
-                    try {
-                        synchronized (this){
-                            wait();
-                        }
-                    } catch (InterruptedException ignored) {}
+                while(wait &&!terminate){//wait for dealer check (a token may leave with its card meanwhile)
+                    LockSupport.park(this);
                 }
             }
         }
@@ -132,33 +122,22 @@ public class Player implements Runnable {
     /**
      * Creates an additional thread for an AI (computer) player. The main loop of this thread repeatedly generates
      * key presses. If the queue of key presses is full, the thread waits until it is not full.
+     * The presses are taken by the player thread.
      */
     private void createArtificialIntelligence() {
         // note: this is a very, very smart AI (!)
-        aiThread = new Thread(() -> {
+        aiThread = GameThreads.newThread(env.config, () -> {
             env.logger.info("thread " + Thread.currentThread().getName() + " starting.");
             while (!terminate) {
                 // player key press simulator
-                if(waitPoint){//get point
-                    point();
+                if(waitPoint||waitPenalty){//frozen until the timer ends the freeze
+                    sleepWhileFrozen();
                 }
-                else if(waitPenalty){//penalty for ilegal set 
-                    penalty();
+                else if(wait || actions.isFull()){//wait for dealer check or for the player thread to take presses
+                    LockSupport.park(this);
                 }
-                else {
-                    env.ui.setFreeze(id,defaultState);//default timer
-                    aiRandomPress();
-                    while(table.getPlayerTokens(id).size()<=table.maxToken && !wait &&!actionQueue.isEmpty() && !terminate){//do actions
-                            doAction(actionQueue.poll());
-                        }            
-                    while((table.getPlayerTokens(id).size()== table.maxToken && wait && !terminate)){//wait for dealer check
-                            dealer.notifyTheards();
-                        try {
-                            synchronized (this){
-                                wait();
-                            }
-                        } catch (InterruptedException ignored) {}
-                    }
+                else if(!aiRandomPress()){//too few cards for a set (the dealer is dealing), wait instead of spinning
+                    LockSupport.parkNanos(this, EMPTY_TABLE_WAIT_NANOS);
                 }
             }
             env.logger.info("thread " + Thread.currentThread().getName() + " terminated.");
@@ -174,7 +153,7 @@ public class Player implements Runnable {
         dealer.notifyTheards();
         notifyThreads();
         try {
-            playerThread.join();
+            if(playerThread!=null) playerThread.join();//null if the thread did not start running yet
         } catch (InterruptedException ignored){}
     }
 
@@ -184,20 +163,20 @@ public class Player implements Runnable {
      * @param slot - the slot corresponding to the key pressed.
      */
     public void keyPressed(int slot){
-        if(human){
-            notifyThreads();
-        }
-        if(actionQueue.size()<table.maxToken && cardPressed.size()<table.maxToken && (!waitPenalty) && (!waitPoint)){
+        if((!waitPenalty) && (!waitPoint)){
             int card=table.getSlotToCard(slot);
             if(card!=table.notExits){
-                cardPressed.add(card);
-                actionQueue.add(slot);
+                int depth = actions.size();
+                boolean accepted = actions.offer(slot, card, System.nanoTime());//dropped if the player has too many presses waiting
+                env.metrics.keyPressed(depth, accepted);
+                LockSupport.unpark(playerThread);
             }
         }
     }    
     
     /**
      * Award a point to a player and perform other related actions.
+     * Called by the dealer, the freeze is ended by the game timer.
      *
      * @post - the player's score is increased by 1.
      * @post - the player's score is updated in the ui.
@@ -205,71 +184,93 @@ public class Player implements Runnable {
     public void point() {
         int ignored = table.countCards(); // this part is just for demonstration in the unit tests
         env.ui.setScore(id, ++score);
-        cardPressed.clear();
-        actionQueue.clear();
-        long startSleep=System.currentTimeMillis();
-        while(System.currentTimeMillis()<env.config.pointFreezeMillis+startSleep){
-            try {
-                env.ui.setFreeze(id,env.config.pointFreezeMillis+startSleep-System.currentTimeMillis());
-                Thread.sleep(powerNap);
-            } catch (InterruptedException e) {}
+        env.metrics.point(id);
+        env.journal.score(id, score);
+        discardBefore=System.nanoTime();
+        if(env.config.pointFreezeMillis>0){
+            waitPoint=true;
+            freeze(env.config.pointFreezeMillis, "point");
         }
-        waitPoint=false;
     }
 
     /**
      * Penalize a player and perform other related actions.
+     * Called by the dealer, the freeze is ended by the game timer.
      */
     public void penalty() {
-        cardPressed.clear();
-        actionQueue.clear();
-        long startSleep=System.currentTimeMillis();
-        while(System.currentTimeMillis()<env.config.penaltyFreezeMillis+startSleep){
-        try {
-            env.ui.setFreeze(id,env.config.penaltyFreezeMillis+startSleep-System.currentTimeMillis());
-            Thread.sleep(powerNap);
-        } catch (InterruptedException ignored){}
+        env.metrics.penalty(id);
+        discardBefore=System.nanoTime();
+        if(env.config.penaltyFreezeMillis>0){
+            waitPenalty=true;
+            freeze(env.config.penaltyFreezeMillis, "penalty");
         }
-        waitPenalty=false;    
+    }
+
+    /**
+     * Shows the freeze in the ui (which counts it down by itself) and schedules its end on the game timer.
+     *
+     * @param millis - the freeze time.
+     * @param reason - the reason for the freeze (point or penalty).
+     */
+    private void freeze(long millis, String reason) {
+        GameEvents.playerFrozen(id, reason, millis);
+        env.ui.setFreezeDeadline(id,System.currentTimeMillis()+millis);
+        env.timer.schedule(() -> {
+            waitPoint=false;
+            waitPenalty=false;
+            notifyThreads();//wake the player threads
+        }, millis);
     }
     
     public int score() {
         return score;
     }
+
+    /**
+     * @return - the number of key presses dropped because too many presses were waiting.
+     */
+    public long droppedPresses() {
+        return actions.dropped();
+    }
     
     //added functions
-    public void aiRandomPress(){//press random card slot
+    public boolean aiRandomPress(){//press random card slot, false if there are too few cards for a set
             List <Integer> currentCardonTable = table.currentCardonTable();
-            if(!currentCardonTable.isEmpty()){
-                Collections.shuffle(currentCardonTable);
-                int card = currentCardonTable.get(table.first);
-                currentCardonTable.remove(table.first);   
+            if(currentCardonTable.size()>=table.maxToken){
+                int card = currentCardonTable.get(random.nextInt(currentCardonTable.size()));
                 int slot = table.getCardToSlot(card);
                 if(slot!=table.notExits){
                     keyPressed(slot);
                 }
-                return;
+                return true;
         }
+        return false;
     }
-    public void doAction(int action){
-        table.SemAcquire();//semphore so the card will not be deleted in the middle of action by the dealer   
-        if(action==table.getCardToSlot(cardPressed.poll())){//check if same card when we pressed on it
-            if(!table.getPlayerTokens(id).contains(action)){
-                if(table.getPlayerTokens(id).size()!=table.maxToken){
-                table.placeToken(id, action);
-                    if(table.getPlayerTokens(id).size()== table.maxToken){
-                        wait=true;
-                        table.playersCardCheck.add(id);
-                    }                
-                }
-            }
-            else{ table.removeToken(id, action);
-            }      
+    public void doAction(){//take the oldest key press (player thread only)
+        int slot = actions.slot();
+        int card = actions.card();//card in the slot when we pressed on it
+        long pressNanos = actions.pressNanos();
+        actions.remove();
+        LockSupport.unpark(aiThread);//room for another press
+        if(pressNanos-discardBefore<0){//pressed before the last verdict
+            return;
+        }
+        Claim claim = table.toggleToken(id, slot, card, pressNanos);
+        if(claim!=null){//third token placed
+            wait=true;
+            GameEvents.claimSubmitted(claim, System.nanoTime()-pressNanos);
+            table.playersCardCheck.add(claim);//wakes the dealer
+        }
+    }
+    private void sleepWhileFrozen() {
+        while((waitPoint||waitPenalty) && !terminate){
+            LockSupport.park(this);
         }
-        table.sem.release();
     }
-    public synchronized void notifyThreads() {
-        notifyAll();
+    //wake the player threads (parking does not pin the carrier of a virtual thread, unlike waiting on a monitor)
+    public void notifyThreads() {
+        LockSupport.unpark(playerThread);
+        LockSupport.unpark(aiThread);
     }
 
 } 
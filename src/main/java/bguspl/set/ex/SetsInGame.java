@@ -0,0 +1,92 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class counts the legal sets that can still be collected in the game, i.e. the sets made only of cards that
+ * are in the dealer's deck or on the table. Cards leave the game only when a set is collected, so the count is
+ * updated then and the game is over once it drops to zero.
+ */
+public class SetsInGame {
+
+    /**
+     * The game environment object.
+     */
+    private final Env env;
+
+    /**
+     * The cards still in the game (in the deck or on the table).
+     */
+    private final List<Integer> cards;
+
+    /**
+     * inGame[card] is true iff the card is still in the game.
+     */
+    private final boolean[] inGame;
+
+    /**
+     * The number of legal sets made of cards still in the game.
+     */
+    private int count;
+
+    /**
+     * @param env   - the game environment object.
+     * @param cards - the cards the game starts with.
+     */
+    public SetsInGame(Env env, List<Integer> cards) {
+        this.env = env;
+        this.cards = new ArrayList<>(cards);
+        this.inGame = new boolean[env.config.deckSize];
+        for (int card : cards)
+            inGame[card] = true;
+        this.count = cards.size() == env.config.deckSize ? fullDeckSets() : env.util.findSets(cards, Integer.MAX_VALUE).size();
+    }
+
+    /**
+     * Counts the sets in a full deck without enumerating them. In every feature the cards of an ordered set either
+     * all share one of the featureSize values or take every value in one of the featureSize! orders. This counts
+     * (featureSize + featureSize!) ^ featureCount ordered sets, featureSize ^ featureCount of which are one card
+     * repeated, and every other set appears in featureSize! orders.
+     */
+    private int fullDeckSets() {
+        long factorial = 1;
+        for (int i = 2; i <= env.config.featureSize; ++i)
+            factorial *= i;
+        long ordered = 1, repeated = 1;
+        for (int i = 0; i < env.config.featureCount; ++i) {
+            ordered *= env.config.featureSize + factorial;
+            repeated *= env.config.featureSize;
+        }
+        return (int) ((ordered - repeated) / factorial);
+    }
+
+    /**
+     * Takes a card out of the game for good (i.e. it was part of a collected set).
+     *
+     * @param card - the card id.
+     * @post - the sets the card was part of are no longer counted.
+     */
+    public void remove(int card) {
+        if (!inGame[card]) return;
+        inGame[card] = false;
+        cards.remove(Integer.valueOf(card));
+        count -= env.util.findSetsWith(card, cards, Integer.MAX_VALUE).size();
+    }
+
+    /**
+     * @return - the number of legal sets that can still be collected.
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * @return - true iff no legal set can be collected anymore.
+     */
+    public boolean isEmpty() {
+        return count == 0;
+    }
+}
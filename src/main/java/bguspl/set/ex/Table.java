@@ -1,17 +1,19 @@
 package bguspl.set.ex;
 
 import bguspl.set.Env;
+import bguspl.set.GameEvents;
+import bguspl.set.GameRandom;
 
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
-import java.util.Objects;
 import java.util.stream.Collectors;
 /////////// Added ///////////
 import java.util.ArrayList;
-import java.util.Queue;
-import java.util.concurrent.Semaphore;
-import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
 /**
  * This class contains the data that is visible to the player.
  *
@@ -25,45 +27,66 @@ public class Table {
     private final Env env;
 
     /**
-     * Mapping between a slot and the card placed in it (null if none).
+     * Mapping between a slot and the card placed in it (-1 if none).
      */
-    protected final Integer[] slotToCard; // card per slot (if any)
+    protected final int[] slotToCard; // card per slot (if any)
 
     /**
-     * Mapping between a card and the slot it is in (null if none).
+     * Mapping between a card and the slot it is in (-1 if none).
      */
-    protected final Integer[] cardToSlot; // slot per card (if any)
+    protected final int[] cardToSlot; // slot per card (if any)
 
     /////////// Added ///////////
-    private volatile List<List<Integer>> tokens;//players list which contains slots token placed on
     public final int maxToken =3;
-    private List <Integer> availableSlots;
-    public Semaphore sem; 
-    public Queue <Integer> playersCardCheck;
+    private final int[][] tokenSlots;//slots each player's tokens are on (-1 for no token)
+    private final int[][] tokenEpochs;//the slot epoch when each token was placed
+    private final int[] slotEpoch;//changes when the card in a slot is removed, which takes all its tokens with it
+    private final ReentrantLock[] tokenLocks;//each player's lock for its tokens (a lock, not a monitor: a virtual thread waiting for it does not pin its carrier)
+    private final BitSet availableSlots;//empty slots
+    private final Random random;//random stream for choosing slots (dealer only)
+    /**
+     * Guards the cards on the table: the dealer takes the write lock to place or remove cards, players take the read
+     * lock (shared) to place or remove their tokens, and single reads are optimistic.
+     */
+    private final StampedLock lock;
+    public final ClaimQueue playersCardCheck;//sets sent to the dealer
     public final int notExits = -1;
     public final int first =0;
+    private final List<int[]> setsOnTable;//legal sets among the cards on the table
+    private volatile int setCount;//number of sets on the table
+    private volatile long version;//changes whenever a card is placed or removed
+    private final long[] placedVersion;//version when each card was last placed
     /**
      * Constructor for testing.
      *
      * @param env        - the game environment objects.
-     * @param slotToCard - mapping between a slot and the card placed in it (null if none).
-     * @param cardToSlot - mapping between a card and the slot it is in (null if none).
+     * @param slotToCard - mapping between a slot and the card placed in it (-1 if none).
+     * @param cardToSlot - mapping between a card and the slot it is in (-1 if none).
      */
-    public Table(Env env, Integer[] slotToCard, Integer[] cardToSlot) {
-        this.playersCardCheck=new ArrayDeque<Integer>();
-        this.sem=new Semaphore(1,true);
+    public Table(Env env, int[] slotToCard, int[] cardToSlot) {
+        this.playersCardCheck=new ClaimQueue();
+        this.lock=new StampedLock();
         this.env = env;
+        this.random = env.random.stream(GameRandom.TABLE);
         this.slotToCard = slotToCard;
         this.cardToSlot = cardToSlot;
-        this.tokens=new ArrayList<List<Integer>>();
+        this.placedVersion = new long[cardToSlot.length];
+        this.tokenSlots=new int[env.config.players][maxToken];
+        this.tokenEpochs=new int[env.config.players][maxToken];
+        this.tokenLocks=new ReentrantLock[env.config.players];
         for(int i=0;i<env.config.players;i++){
-           tokens.add(new ArrayList<Integer>()); 
+            Arrays.fill(tokenSlots[i], notExits);
+            tokenLocks[i]=new ReentrantLock();
         }
-        this.availableSlots =new ArrayList<Integer>();
-        for(int i=0;i<env.config.tableSize;i++){
-            availableSlots.add(i);
+        this.slotEpoch=new int[slotToCard.length];
+        this.availableSlots =new BitSet(slotToCard.length);
+        for(int slot=0;slot<slotToCard.length;slot++){
+            if(slotToCard[slot]==notExits){
+                availableSlots.set(slot);
+            }
         }
-        
+        this.setsOnTable=new ArrayList<int[]>(env.util.findSets(cardsOnTable(), Integer.MAX_VALUE));
+        this.setCount=setsOnTable.size();
     }
 
     /**
@@ -73,15 +96,20 @@ public class Table {
      */
     public Table(Env env) {
 
-        this(env, new Integer[env.config.tableSize], new Integer[env.config.deckSize]);
+        this(env, emptyMap(env.config.tableSize), emptyMap(env.config.deckSize));
+    }
+
+    private static int[] emptyMap(int size) {
+        int[] map = new int[size];
+        Arrays.fill(map, -1);
+        return map;
     }
 
     /**
      * This method prints all possible legal sets of cards that are currently on the table.
      */
     public void hints() {
-        List<Integer> deck = Arrays.stream(slotToCard).filter(Objects::nonNull).collect(Collectors.toList());
-        env.util.findSets(deck, Integer.MAX_VALUE).forEach(set -> {
+        getSetsOnTable().forEach(set -> {
             StringBuilder sb = new StringBuilder().append("Hint: Set found: ");
             List<Integer> slots = Arrays.stream(set).mapToObj(card -> cardToSlot[card]).sorted().collect(Collectors.toList());
             int[][] features = env.util.cardsToFeatures(set);
@@ -95,9 +123,23 @@ public class Table {
      * @return - the number of cards on the table.
      */
     public int countCards() {
+        long stamp = lock.tryOptimisticRead();
+        int cards = countCards(slotToCard);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                cards = countCards(slotToCard);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return cards;
+    }
+
+    private static int countCards(int[] slotToCard) {
         int cards = 0;
-        for (Integer card : slotToCard)
-            if (card != null)
+        for (int card : slotToCard)
+            if (card != -1)
                 ++cards;
         return cards;
     }
@@ -111,16 +153,28 @@ public class Table {
      */
     public void placeCard(int card, int slot) {
         try {
-            Thread.sleep(env.config.tableDelayMillis);
+            Thread.sleep(env.config.tableDelayMillis);//players may go on while the dealer waits
         } catch (InterruptedException ignored) {}
 
-        cardToSlot[card] = slot;
-        slotToCard[slot] = card;
+        long waitStart = System.nanoTime();
+        long stamp = lock.writeLock();
+        long locked = System.nanoTime();
+        try {
+            cardToSlot[card] = slot;
+            slotToCard[slot] = card;
+            placedVersion[card] = ++version;
+            //add the sets the new card completes
+            setsOnTable.addAll(env.util.findSetsWith(card, cardsOnTable(), Integer.MAX_VALUE));
+            setCount=setsOnTable.size();
 
-        env.ui.placeCard(card,slot);
-        //remove available slots list
-        if(!availableSlots.isEmpty() && availableSlots.contains(slot)){
-            availableSlots.remove(availableSlots.indexOf(slot));
+            env.journal.cardPlaced(slot, card);
+            env.ui.placeCard(card,slot);
+            availableSlots.clear(slot);
+        } finally {
+            lock.unlockWrite(stamp);
+            long hold = System.nanoTime() - locked;
+            env.metrics.cardPlaced(locked - waitStart, hold);
+            GameEvents.cardPlaced(card, slot, locked - waitStart, hold);
         }
     }
     /**
@@ -129,24 +183,41 @@ public class Table {
      */
     public void removeCard(int slot) {
         try {
-            Thread.sleep(env.config.tableDelayMillis);
+            Thread.sleep(env.config.tableDelayMillis);//players may go on while the dealer waits
         } catch (InterruptedException ignored) {}
 
-        //remove player token
-        for (List<Integer> token : tokens) {
-            if(token.contains(slot)){
-                token.remove(Integer.valueOf(slot));
+        long waitStart = System.nanoTime();
+        long stamp = lock.writeLock();
+        long locked = System.nanoTime();
+        int card = slotToCard[slot];
+        try {
+            //remove the players' tokens (the players hold the read lock while changing tokens)
+            slotEpoch[slot]++;
+            availableSlots.set(slot);
+            //update UI
+            cardToSlot[card] = notExits;
+            slotToCard[slot] = notExits;
+            version++;
+            //drop the sets the removed card was part of
+            for(Iterator<int[]> sets = setsOnTable.iterator(); sets.hasNext();){
+                int[] set = sets.next();
+                for(int setCard : set){
+                    if(setCard == card){
+                        sets.remove();
+                        break;
+                    }
+                }
             }
+            setCount=setsOnTable.size();
+            env.journal.cardRemoved(slot, card);
+            env.ui.removeTokens(slot);
+            env.ui.removeCard(slot);
+        } finally {
+            lock.unlockWrite(stamp);
+            long hold = System.nanoTime() - locked;
+            env.metrics.cardRemoved(locked - waitStart, hold);
+            GameEvents.cardRemoved(card, slot, locked - waitStart, hold);
         }
-        //added to available slots list
-        availableSlots.add(slot);
-        //update UI
-        int card = slotToCard[slot];
-        cardToSlot[card] = null;
-        slotToCard[slot] = null;
-        env.ui.removeTokens(slot);
-        env.ui.removeCard(slot);
-        
     }
 
     /**
@@ -155,14 +226,58 @@ public class Table {
      * @param slot   - the slot on which to place the token.
      */
     public void placeToken(int player, int slot) {
-        if(!tokens.get(player).contains(slot)&& slotToCard[slot]!=null && tokens.get(player).size()!=maxToken){
-            //add player token
-            tokens.get(player).add(slot);
-            //update UI
-            env.ui.placeToken(player,slot);
+        long stamp = lock.readLock();
+        try {
+            tokenLocks[player].lock();
+            try {
+                addToken(player, slot);
+            } finally {
+                tokenLocks[player].unlock();
+            }
+        } finally {
+            lock.unlockRead(stamp);
         }
     }
 
+    //place a token, holding the read lock and the player's lock
+    private void addToken(int player, int slot) {
+        if(tokenIndex(player, slot)==notExits && slotToCard[slot]!=notExits){
+            int free = tokenIndex(player, notExits);//a token that was never placed or was removed
+            if(free!=notExits){
+                //add player token
+                tokenSlots[player][free] = slot;
+                tokenEpochs[player][free] = slotEpoch[slot];
+                env.journal.tokenPlaced(player, slot, slotToCard[slot]);
+                //update UI
+                env.ui.placeToken(player,slot);
+            }
+        }
+    }
+
+    //index of the player's token on the slot (any removed token for slot -1), -1 if none, holding the player's lock
+    private int tokenIndex(int player, int slot) {
+        for(int i=0;i<maxToken;i++){
+            int tokenSlot = tokenSlots[player][i];
+            boolean removed = tokenSlot==notExits || tokenEpochs[player][i]!=slotEpoch[tokenSlot];
+            if(slot==notExits ? removed : !removed && tokenSlot==slot){
+                return i;
+            }
+        }
+        return notExits;
+    }
+
+    //number of player tokens, holding the player's lock
+    private int countTokens(int player) {
+        int count = 0;
+        for(int i=0;i<maxToken;i++){
+            int tokenSlot = tokenSlots[player][i];
+            if(tokenSlot!=notExits && tokenEpochs[player][i]==slotEpoch[tokenSlot]){
+                count++;
+            }
+        }
+        return count;
+    }
+
     /**
      * Removes a token of a player from a grid slot.
      * @param player - the player the token belongs to.
@@ -170,10 +285,26 @@ public class Table {
      * @return       - true iff a token was successfully removed.
      */
     public boolean removeToken(int player, int slot) {
-        if(tokens.get(player).contains(slot)){
+        long stamp = lock.readLock();
+        try {
+            tokenLocks[player].lock();
+            try {
+                return deleteToken(player, slot);
+            } finally {
+                tokenLocks[player].unlock();
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    //remove a token, holding the read lock and the player's lock
+    private boolean deleteToken(int player, int slot) {
+        int index=tokenIndex(player, slot);
+        if(index!=notExits){
             //remove player token
-            int index=tokens.get(player).indexOf(slot);
-            tokens.get(player).remove(index);
+            tokenSlots[player][index] = notExits;
+            env.journal.tokenRemoved(player, slot, slotToCard[slot]);
             //update UI
             env.ui.removeToken(player, slot);
             return true;
@@ -181,52 +312,189 @@ public class Table {
         return false;
     }
     //added functions 
-    public void SemAcquire(){//acquire semaphore
+    /**
+     * Places a player token on a slot, or removes it if the player already has a token there, provided the slot
+     * still holds the card the player pressed. Other players may do the same at the same time.
+     * @param player     - the player the token belongs to.
+     * @param slot       - the slot pressed.
+     * @param card       - the card that was in the slot when the player pressed it.
+     * @param pressNanos - the time of the key press.
+     * @return           - the player's set for the dealer to check if the player now has maxToken tokens, null otherwise.
+     */
+    public Claim toggleToken(int player, int slot, int card, long pressNanos){
+        long waitStart = System.nanoTime();
+        long stamp = lock.readLock();//the dealer does not change cards meanwhile
+        env.metrics.tokenLockAcquired(System.nanoTime() - waitStart);
         try {
-            sem.acquire();
-        } catch (InterruptedException ignored) {}
+            tokenLocks[player].lock();
+            try {
+                if(slotToCard[slot]!=card){//card was replaced since the press
+                    return null;
+                }
+                if(deleteToken(player, slot) || countTokens(player)==maxToken){
+                    return null;
+                }
+                addToken(player, slot);
+                if(countTokens(player)!=maxToken){
+                    return null;
+                }
+                int[] slots = tokenSlots[player];
+                int[] cards = new int[maxToken];
+                for(int i=0;i<maxToken;i++){
+                    cards[i]=slotToCard[slots[i]];
+                }
+                return new Claim(player, cards, slots, pressNanos, version);
+            } finally {
+                tokenLocks[player].unlock();
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
     }
-    //list of player tokens
+    //copy of the list of player tokens
     public List<Integer> getPlayerTokens(int player){
-        return tokens.get(player);
+        long stamp = lock.readLock();//the dealer does not remove tokens meanwhile
+        try {
+            tokenLocks[player].lock();
+            try {
+                List<Integer> playerTokens = new ArrayList<Integer>();
+                for(int i=0;i<maxToken;i++){
+                    int tokenSlot = tokenSlots[player][i];
+                    if(tokenSlot!=notExits && tokenEpochs[player][i]==slotEpoch[tokenSlot]){
+                        playerTokens.add(tokenSlot);
+                    }
+                }
+                return playerTokens;
+            } finally {
+                tokenLocks[player].unlock();
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    //number of player tokens
+    public int tokenCount(int player){
+        long stamp = lock.tryOptimisticRead();
+        int count;
+        tokenLocks[player].lock();
+        try {
+            count = countTokens(player);
+        } finally {
+            tokenLocks[player].unlock();
+        }
+        if(!lock.validate(stamp)){//the dealer removed a card meanwhile
+            stamp = lock.readLock();
+            try {
+                tokenLocks[player].lock();
+                try {
+                    count = countTokens(player);
+                } finally {
+                    tokenLocks[player].unlock();
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return count;
     }
     //get Slot to card
     public int getSlotToCard(int slot){
-        if(slotToCard[slot]==null){
-            return notExits;
+        long stamp = lock.tryOptimisticRead();
+        int card = slotToCard[slot];
+        if(!lock.validate(stamp)){//the dealer changed the table meanwhile
+            stamp = lock.readLock();
+            try {
+                card = slotToCard[slot];
+            } finally {
+                lock.unlockRead(stamp);
+            }
         }
-        return slotToCard[slot];
+        return card;
     }
     //get card to slot
     public int getCardToSlot(int card){
-        if(cardToSlot[card]==null){
-            return notExits;
+        long stamp = lock.tryOptimisticRead();
+        int slot = cardToSlot[card];
+        if(!lock.validate(stamp)){//the dealer changed the table meanwhile
+            stamp = lock.readLock();
+            try {
+                slot = cardToSlot[card];
+            } finally {
+                lock.unlockRead(stamp);
+            }
         }
-        return cardToSlot[card];
+        return slot;
     }
-    //get available slot
+    //get a random available slot (dealer only)
     public int getAvailableSlot(){
-        if(!availableSlots.isEmpty()){
-            Collections.shuffle(availableSlots);
-            int availableSlot=availableSlots.get(first);
-            availableSlots.remove(first);
-            return availableSlot;
-        } 
-        return notExits;
+        int count = availableSlots.cardinality();
+        if(count==0){
+            return notExits;
+        }
+        int availableSlot = availableSlots.nextSetBit(0);
+        for(int skip = random.nextInt(count); skip>0; skip--){
+            availableSlot = availableSlots.nextSetBit(availableSlot+1);
+        }
+        availableSlots.clear(availableSlot);
+        return availableSlot;
     }
     //return list of cards id on the table
     public List<Integer> currentCardonTable(){
+        long stamp = lock.tryOptimisticRead();
+        List<Integer> currentCardonTable = cardsOnTable();
+        if(!lock.validate(stamp)){//the dealer changed the table meanwhile
+            stamp = lock.readLock();
+            try {
+                currentCardonTable = cardsOnTable();
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return currentCardonTable;
+    }
+    //list of cards id on the table, without locking
+    private List<Integer> cardsOnTable(){
         List<Integer>  currentCardonTable = new ArrayList<Integer>();
-        for(int slot=0;slot<env.config.tableSize;slot++){
-            int card = getSlotToCard(slot);
+        for(int slot=0;slot<slotToCard.length;slot++){
+            int card = slotToCard[slot];
             if(card!=notExits){
                 currentCardonTable.add(card);
             }
         }
         return currentCardonTable;
-    } 
+    }
     //check if not exist set on the table
     public boolean notExistSetinTable(){
-       return (env.util.findSets(currentCardonTable(), 1).size() == 0);
+       return setCount == 0;
+    }
+    //number of legal sets on the table
+    public int countSets(){
+        return setCount;
+    }
+    //current table version
+    public long version(){
+        return version;
+    }
+    //true iff all the cards of the claim are still in the slots they were in when it was sent
+    public boolean isCurrent(Claim claim){
+        if(claim.tableVersion==version){//no card was placed or removed since
+            return true;
+        }
+        for(int i=0;i<claim.size();i++){
+            int card=claim.card(i);
+            if(getCardToSlot(card)!=claim.slot(i) || placedVersion[card]>claim.tableVersion){
+                return false;
+            }
+        }
+        return true;
+    }
+    //copy of the legal sets on the table
+    public List<int[]> getSetsOnTable(){
+        long stamp = lock.readLock();//the dealer does not change the sets meanwhile (not to be called holding the write lock)
+        try {
+            return new ArrayList<int[]>(setsOnTable);
+        } finally {
+            lock.unlockRead(stamp);
+        }
     }
 }
@@ -0,0 +1,91 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedGameJournalTest {
+
+    private static final long TINY_SEGMENT_BYTES = MappedGameJournal.HEADER_SIZE + 8 * MappedGameJournal.RECORD_SIZE;
+
+    @TempDir
+    File directory;
+
+    Logger logger;
+    Properties properties;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        logger = Logger.getLogger("MappedGameJournalTest");
+        logger.setUseParentHandlers(false);
+        properties = Simulation.simulationProperties(null);
+        properties.setProperty("FeatureCount", "3");
+        properties.setProperty("JournalDirectory", directory.getPath());
+        properties.setProperty("JournalSegmentMegabytes", Double.toString(TINY_SEGMENT_BYTES / 1024.0 / 1024.0));
+    }
+
+    @Test
+    void concurrentWritersLoseNoRecordsAcrossRollOvers() throws Exception {
+        Config config = new Config(logger, properties);
+        File journalDirectory = new File(directory, "writers");
+        int writers = 8;
+        int records = 2000;
+        try (MappedGameJournal journal = new MappedGameJournal(logger, config, journalDirectory, TINY_SEGMENT_BYTES, 0)) {
+            List<Thread> threads = new ArrayList<>();
+            for (int writer = 0; writer < writers; writer++) {
+                int player = writer;
+                threads.add(new Thread(() -> {
+                    for (int i = 0; i < records; i++)
+                        journal.tokenPlaced(player, 0, i);
+                }));
+            }
+            for (Thread thread : threads)
+                thread.start();
+            for (Thread thread : threads)
+                thread.join();
+            assertEquals((long) writers * records, journal.records());
+        }
+
+        GameJournalReader reader = new GameJournalReader(journalDirectory);
+        int[] expected = new int[writers];
+        while (reader.next()) {
+            assertEquals(GameJournal.TOKEN_PLACED, reader.type());
+            assertEquals(expected[reader.player()]++, reader.card(), "records of player " + reader.player());
+        }
+        for (int count : expected)
+            assertEquals(records, count);
+    }
+
+    @Test
+    void simulatedGamesWithTinySegmentsReplay() throws Exception {
+        Config config = new Config(logger, properties);
+        Util util = new UtilImpl(config);
+        GameMetrics metrics = new GameMetrics(config.players);
+        int games = 4;
+        List<Thread> threads = new ArrayList<>();
+        for (int game = 0; game < games; game++) {
+            int number = game;
+            threads.add(new Thread(() -> Simulation.playGame(logger, config, util, metrics, number)));
+        }
+        for (Thread thread : threads)
+            thread.start();
+        for (Thread thread : threads)
+            thread.join();
+
+        List<File> journals = Replay.journals(directory);
+        assertEquals(games, journals.size());
+        for (File journal : journals) {
+            assertTrue(MappedGameJournal.segmentFile(journal, 1).exists(), "the journal rolled over");
+            assertTrue(new Replay(logger, journal, new UserInterfaceNull(), 0).run() > 0);
+        }
+    }
+}